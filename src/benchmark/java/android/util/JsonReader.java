@@ -0,0 +1,122 @@
+package android.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <h3>Description</h3>
+ * 
+ * Replaces android.util.JsonReader of the stub jar when the benchmarks run
+ * on the desktop JVM, so the streaming parsers can be measured there. Reads
+ * with Gson's JsonReader, which has the same API. Only for the benchmarks,
+ * it is not part of the library.
+ * 
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public final class JsonReader implements Closeable {
+  private final com.google.gson.stream.JsonReader reader;
+
+  public JsonReader(Reader in) {
+    reader = new com.google.gson.stream.JsonReader(in);
+  }
+
+  public void setLenient(boolean lenient) {
+    reader.setLenient(lenient);
+  }
+
+  public boolean isLenient() {
+    return reader.isLenient();
+  }
+
+  public void beginArray() throws IOException {
+    reader.beginArray();
+  }
+
+  public void endArray() throws IOException {
+    reader.endArray();
+  }
+
+  public void beginObject() throws IOException {
+    reader.beginObject();
+  }
+
+  public void endObject() throws IOException {
+    reader.endObject();
+  }
+
+  public boolean hasNext() throws IOException {
+    return reader.hasNext();
+  }
+
+  public JsonToken peek() throws IOException {
+    return JsonToken.valueOf(reader.peek().name());
+  }
+
+  public String nextName() throws IOException {
+    return reader.nextName();
+  }
+
+  public String nextString() throws IOException {
+    return reader.nextString();
+  }
+
+  public boolean nextBoolean() throws IOException {
+    return reader.nextBoolean();
+  }
+
+  public void nextNull() throws IOException {
+    reader.nextNull();
+  }
+
+  public double nextDouble() throws IOException {
+    return reader.nextDouble();
+  }
+
+  public long nextLong() throws IOException {
+    return reader.nextLong();
+  }
+
+  public int nextInt() throws IOException {
+    return reader.nextInt();
+  }
+
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  public void skipValue() throws IOException {
+    reader.skipValue();
+  }
+
+  @Override
+  public String toString() {
+    return reader.toString();
+  }
+}
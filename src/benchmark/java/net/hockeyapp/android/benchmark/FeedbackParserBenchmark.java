@@ -0,0 +1,386 @@
+package net.hockeyapp.android.benchmark;
+
+import android.util.JsonReader;
+import net.hockeyapp.android.objects.FeedbackAttachment;
+import net.hockeyapp.android.objects.FeedbackMessage;
+import net.hockeyapp.android.objects.FeedbackResponse;
+import net.hockeyapp.android.utils.FeedbackParser;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Benchmark for {@link FeedbackParser} with a thread of 500 messages. The
+ * response is parsed from its bytes as after a request:
+ *
+ * <ul>
+ * <li>legacy: read into a string and parsed into a JSONObject first, as
+ * before the streaming parser</li>
+ * <li>string: read into a string and parsed with
+ * {@link FeedbackParser#parseFeedbackResponse(String)}</li>
+ * <li>stream: parsed while it is read with
+ * {@link FeedbackParser#parseFeedbackResponse(java.io.Reader)}</li>
+ * </ul>
+ *
+ * The stream case needs android.util.JsonReader. On a device it runs with
+ * API 11 or later, e.g.
+ *
+ * <pre>
+ * adb shell CLASSPATH=/data/local/tmp/benchmark.jar app_process / net.hockeyapp.android.benchmark.FeedbackParserBenchmark
+ * </pre>
+ *
+ * On the desktop JVM, the android.util.JsonReader in this source tree
+ * replaces the one of the stub jar and reads with Gson's JsonReader, which
+ * Android's implementation is derived from. The classes and Gson have to
+ * come before the stub jar on the class path, e.g.
+ *
+ * <pre>
+ * java -cp classes:gson.jar:android.jar:json.jar net.hockeyapp.android.benchmark.FeedbackParserBenchmark
+ * </pre>
+ *
+ * There the string case falls back to JSONObject as before API 11, and the
+ * allocated bytes per parse are measured as well.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class FeedbackParserBenchmark {
+  private static final int MESSAGE_COUNT = 500;
+
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int ITERATIONS = 100;
+
+  /**
+   * Interface for the implementations, so all run the same loop.
+   */
+  private interface Parser {
+    FeedbackResponse parse(byte[] response) throws Exception;
+  }
+
+  private static final Parser LEGACY = new Parser() {
+    public FeedbackResponse parse(byte[] response) throws Exception {
+      return legacyParseFeedbackResponse(new String(response, "UTF-8"));
+    }
+  };
+
+  private static final Parser STRING = new Parser() {
+    public FeedbackResponse parse(byte[] response) throws Exception {
+      return FeedbackParser.getInstance().parseFeedbackResponse(new String(response, "UTF-8"));
+    }
+  };
+
+  private static final Parser STREAM = new Parser() {
+    public FeedbackResponse parse(byte[] response) throws Exception {
+      InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(response), "UTF-8");
+      try {
+        return FeedbackParser.getInstance().parseFeedbackResponse(reader);
+      }
+      finally {
+        reader.close();
+      }
+    }
+  };
+
+  public static void main(String[] args) throws Exception {
+    byte[] response = createResponse(MESSAGE_COUNT);
+    System.out.println("Response with " + MESSAGE_COUNT + " messages, " + response.length + " bytes.");
+
+    List<String> names = new ArrayList<String>();
+    List<Parser> parsers = new ArrayList<Parser>();
+    names.add("legacy");
+    parsers.add(LEGACY);
+    names.add("string");
+    parsers.add(STRING);
+    if (isStreamingSupported()) {
+      names.add("stream");
+      parsers.add(STREAM);
+    }
+    else {
+      System.out.println("JsonReader is not available, skipping the stream case.");
+    }
+
+    FeedbackResponse expected = LEGACY.parse(response);
+    for (int index = 1; index < parsers.size(); index++) {
+      compare(names.get(index), expected, parsers.get(index).parse(response));
+    }
+    System.out.println("Results match for " + names.size() + " parsers.");
+
+    for (Parser parser : parsers) {
+      run(parser, response, WARMUP_ITERATIONS);
+    }
+    for (int index = 0; index < parsers.size(); index++) {
+      report(names.get(index), parsers.get(index), response);
+    }
+  }
+
+  /**
+   * Returns true if android.util.JsonReader works, i.e. on a device or with
+   * the shim in this source tree before the stub jar on the class path.
+   */
+  private static boolean isStreamingSupported() {
+    try {
+      new JsonReader(new StringReader("[]")).beginArray();
+      return true;
+    }
+    catch (IOException e) {
+      return false;
+    }
+    catch (RuntimeException e) {
+      // Stub jar
+      return false;
+    }
+    catch (LinkageError e) {
+      // Before API 11
+      return false;
+    }
+  }
+
+  private static void report(String name, Parser parser, byte[] response) throws Exception {
+    long allocatedBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+    int checksum = run(parser, response, ITERATIONS);
+    long time = System.nanoTime() - start;
+    long allocated = getAllocatedBytes() - allocatedBefore;
+
+    System.out.println(String.format("%-8s %8.2f ms/op %12s bytes/op (checksum %d)", name, time / 1000000.0 / ITERATIONS,
+        (allocatedBefore < 0 ? "n/a" : String.format("%.0f", (double)allocated / ITERATIONS)), checksum));
+  }
+
+  private static int run(Parser parser, byte[] response, int iterations) throws Exception {
+    int checksum = 0;
+    for (int index = 0; index < iterations; index++) {
+      checksum += parser.parse(response).getFeedback().getMessages().size();
+    }
+    return checksum;
+  }
+
+  private static long getAllocatedBytes() {
+    try {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    catch (LinkageError e) {
+      // No java.lang.management on Android
+    }
+    return -1;
+  }
+
+  private static void compare(String name, FeedbackResponse expected, FeedbackResponse actual) {
+    List<FeedbackMessage> expectedMessages = expected.getFeedback().getMessages();
+    List<FeedbackMessage> actualMessages = actual.getFeedback().getMessages();
+    check(name, "message count", expectedMessages.size(), actualMessages.size());
+    check(name, "token", expected.getToken(), actual.getToken());
+
+    for (int index = 0; index < expectedMessages.size(); index++) {
+      FeedbackMessage expectedMessage = expectedMessages.get(index);
+      FeedbackMessage actualMessage = actualMessages.get(index);
+      check(name, "id", expectedMessage.getId(), actualMessage.getId());
+      check(name, "text", expectedMessage.getText(), actualMessage.getText());
+      check(name, "name", expectedMessage.getName(), actualMessage.getName());
+      check(name, "created_at", expectedMessage.getCreatedAt(), actualMessage.getCreatedAt());
+      check(name, "attachment count", expectedMessage.getFeedbackAttachments().size(), actualMessage.getFeedbackAttachments().size());
+    }
+  }
+
+  private static void check(String name, String field, Object expected, Object actual) {
+    if ((expected == null) ? (actual != null) : (!expected.equals(actual))) {
+      throw new AssertionError("Different " + field + " from " + name + ": " + actual + " instead of " + expected);
+    }
+  }
+
+  private static byte[] createResponse(int messageCount) throws UnsupportedEncodingException {
+    StringBuilder builder = new StringBuilder();
+    builder.append("{\"feedback\":{\"name\":\"Jane Doe\",\"email\":\"jane@example.com\",\"id\":4711,");
+    builder.append("\"created_at\":\"2014-03-03T16:05:00Z\",\"messages\":[");
+    for (int index = 0; index < messageCount; index++) {
+      if (index > 0) {
+        builder.append(",");
+      }
+      builder.append("{\"subject\":\"Subject ").append(index).append("\",");
+      builder.append("\"text\":\"Message number ").append(index).append(" with some text about the app \\u00e4\\u00f6\\u00fc\\nand a second line\",");
+      builder.append("\"oem\":\"samsung\",\"model\":\"GT-I9300\",\"os_version\":\"4.3\",");
+      builder.append("\"created_at\":\"2014-03-").append(10 + index % 18).append("T1").append(index % 10).append(":05:00Z\",");
+      builder.append("\"id\":").append(1000 + index).append(",\"token\":\"0123456789abcdef\",\"via\":").append(index % 2 + 1).append(",");
+      builder.append("\"user_string\":null,\"clean_text\":\"Message number ").append(index).append("\",");
+      builder.append("\"name\":\"").append(index % 2 == 0 ? "Jane Doe" : "Developer").append("\",\"app_id\":null,");
+      builder.append("\"attachments\":[");
+      if (index % 5 == 0) {
+        builder.append("{\"id\":").append(index).append(",\"feedback_message_id\":").append(1000 + index).append(",");
+        builder.append("\"file_name\":\"screenshot.jpg\",\"url\":\"https://rink.hockeyapp.net/api/2/apps/0123456789abcdef/feedback/attachments/");
+        builder.append(index).append("\",\"created_at\":\"2014-03-03T16:05:00Z\",\"updated_at\":\"2014-03-03T16:05:00Z\"}");
+      }
+      builder.append("]}");
+    }
+    builder.append("]},\"status\":\"success\",\"token\":\"0123456789abcdef0123456789abcdef\"}");
+    return builder.toString().getBytes("UTF-8");
+  }
+
+  /**
+   * Copy of FeedbackParser.parseFeedbackResponse(String) before the response
+   * was parsed in one pass. It didn't set the display date, the adapter
+   * formatted it when a message was shown.
+   */
+  private static FeedbackResponse legacyParseFeedbackResponse(String feedbackResponseJson) {
+    FeedbackResponse feedbackResponse = null;
+    net.hockeyapp.android.objects.Feedback feedback = null;
+    if (feedbackResponseJson != null) {
+      try {
+        JSONObject jsonObject = new JSONObject(feedbackResponseJson);
+        
+        JSONObject feedbackObject = jsonObject.getJSONObject("feedback");
+        feedback = new net.hockeyapp.android.objects.Feedback();
+        
+        /** Parse the Messages Array */
+        JSONArray messagesArray = feedbackObject.getJSONArray("messages");
+        ArrayList<FeedbackMessage> messages = null;
+        
+        FeedbackMessage feedbackMessage = null;
+        if (messagesArray.length() > 0) {
+          messages = new ArrayList<FeedbackMessage>();
+          
+          for (int i = 0; i < messagesArray.length(); i ++) {
+            String subject = messagesArray.getJSONObject(i).getString("subject").toString();
+            String text = messagesArray.getJSONObject(i).getString("text").toString();
+            String oem = messagesArray.getJSONObject(i).getString("oem").toString();
+            String model = messagesArray.getJSONObject(i).getString("model").toString();
+            String osVersion = messagesArray.getJSONObject(i).getString("os_version").toString();
+            String createdAt = messagesArray.getJSONObject(i).getString("created_at").toString();
+            int id = messagesArray.getJSONObject(i).getInt("id");
+            String token = messagesArray.getJSONObject(i).getString("token").toString();
+            int via = messagesArray.getJSONObject(i).getInt("via");
+            String userString = messagesArray.getJSONObject(i).getString("user_string").toString();
+            String cleanText = messagesArray.getJSONObject(i).getString("clean_text").toString();
+            String name = messagesArray.getJSONObject(i).getString("name").toString();
+            String appId = messagesArray.getJSONObject(i).getString("app_id").toString();
+
+            JSONArray jsonAttachments = messagesArray.getJSONObject(i).optJSONArray("attachments");
+            List<FeedbackAttachment> feedbackAttachments = Collections.emptyList();
+            if (jsonAttachments != null) {
+              feedbackAttachments = new ArrayList<FeedbackAttachment>();
+
+              for (int j = 0; j < jsonAttachments.length(); j++) {
+                int attachmentId = jsonAttachments.getJSONObject(j).getInt("id");
+                int attachmentMessageId = jsonAttachments.getJSONObject(j).getInt("feedback_message_id");
+                String filename = jsonAttachments.getJSONObject(j).getString("file_name");
+                String url = jsonAttachments.getJSONObject(j).getString("url");
+                String attachmentCreatedAt = jsonAttachments.getJSONObject(j).getString("created_at");
+                String attachmentUpdatedAt = jsonAttachments.getJSONObject(j).getString("updated_at");
+
+                FeedbackAttachment feedbackAttachment = new FeedbackAttachment();
+                feedbackAttachment.setId(attachmentId);
+                feedbackAttachment.setMessageId(attachmentMessageId);
+                feedbackAttachment.setFilename(filename);
+                feedbackAttachment.setUrl(url);
+                feedbackAttachment.setCreatedAt(attachmentCreatedAt);
+                feedbackAttachment.setUpdatedAt(attachmentUpdatedAt);
+                feedbackAttachments.add(feedbackAttachment);
+              }
+            }
+
+            feedbackMessage = new FeedbackMessage();
+            feedbackMessage.setAppId(appId);
+            feedbackMessage.setCleanText(cleanText);
+            feedbackMessage.setCreatedAt(createdAt);
+            feedbackMessage.setId(id);
+            feedbackMessage.setModel(model);
+            feedbackMessage.setName(name);
+            feedbackMessage.setOem(oem);
+            feedbackMessage.setOsVersion(osVersion);
+            feedbackMessage.setSubjec(subject);
+            feedbackMessage.setText(text);
+            feedbackMessage.setToken(token);
+            feedbackMessage.setUserString(userString);
+            feedbackMessage.setVia(via);
+            feedbackMessage.setFeedbackAttachments(feedbackAttachments);
+            messages.add(feedbackMessage);
+          }
+        }
+        
+        feedback.setMessages(messages);
+        
+        try {
+          feedback.setName(feedbackObject.getString("name").toString());
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+    
+        try {
+          feedback.setEmail(feedbackObject.getString("email").toString());
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+    
+        try {
+          feedback.setId(feedbackObject.getInt("id"));
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+    
+        try {
+          feedback.setCreatedAt(feedbackObject.getString("created_at").toString());
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+        
+        feedbackResponse = new FeedbackResponse();
+        feedbackResponse.setFeedback(feedback);
+        try {
+          feedbackResponse.setStatus(jsonObject.getString("status").toString());
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+        
+    
+        try {
+          feedbackResponse.setToken(jsonObject.getString("token").toString());
+        } catch (JSONException e) {
+          e.printStackTrace();
+        }
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+    }
+    
+    return feedbackResponse;
+  }
+}
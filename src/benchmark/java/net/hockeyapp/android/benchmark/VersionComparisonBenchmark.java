@@ -0,0 +1,174 @@
+package net.hockeyapp.android.benchmark;
+
+import net.hockeyapp.android.utils.VersionHelper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Scanner;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Microbenchmark for {@link VersionHelper#compareVersionStrings(String, String)}.
+ * Compares it with the former Scanner-based implementation, first checks
+ * that both return the same results and then measures the time and, on
+ * HotSpot, the allocated bytes per comparison. Runs on the desktop JVM
+ * with the Android stub jar on the class path, e.g.
+ *
+ * <pre>
+ * java -cp classes:android.jar net.hockeyapp.android.benchmark.VersionComparisonBenchmark
+ * </pre>
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class VersionComparisonBenchmark {
+  private static final String[][] CASES = {
+    { "4.0.3", "4.0.3" },
+    { "4.0", "4.0.3" },
+    { "4.1.2", "4.1" },
+    { "2.3.7", "4.4.4" },
+    { "5.0", "4.4.4" },
+    { "4.4W", "4.4" },
+    { "4.0.3-update1", "4.0.3" },
+    { "4.0.3", "4.0.4-update1" },
+    { "10.0", "9.0" },
+    { "L", "4.4" },
+    { "4.x.1", "4.1" },
+    { "", "4.1" },
+    { "4..1", "4.0.1" },
+    { null, "4.1" }
+  };
+
+  private static final int WARMUP_ITERATIONS = 200000;
+  private static final int ITERATIONS = 2000000;
+
+  /**
+   * Interface for the implementations, so both run the same loop.
+   */
+  private interface Comparison {
+    int compare(String left, String right);
+  }
+
+  private static final Comparison CURRENT = new Comparison() {
+    public int compare(String left, String right) {
+      return VersionHelper.compareVersionStrings(left, right);
+    }
+  };
+
+  private static final Comparison LEGACY = new Comparison() {
+    public int compare(String left, String right) {
+      return legacyCompareVersionStrings(left, right);
+    }
+  };
+
+  public static void main(String[] args) {
+    for (String[] versions : CASES) {
+      int expected = legacyCompareVersionStrings(versions[0], versions[1]);
+      int actual = VersionHelper.compareVersionStrings(versions[0], versions[1]);
+      if (expected != actual) {
+        throw new AssertionError("Different result for " + versions[0] + " / " + versions[1] + ": " + actual + " instead of " + expected);
+      }
+    }
+    System.out.println("Results match for " + CASES.length + " cases.");
+
+    run("legacy", LEGACY, WARMUP_ITERATIONS);
+    run("current", CURRENT, WARMUP_ITERATIONS);
+    report("legacy", LEGACY);
+    report("current", CURRENT);
+  }
+
+  private static void report(String name, Comparison comparison) {
+    long allocatedBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+    int checksum = run(name, comparison, ITERATIONS);
+    long time = System.nanoTime() - start;
+    long allocated = getAllocatedBytes() - allocatedBefore;
+
+    System.out.println(String.format("%-8s %8.1f ns/op %10s bytes/op (checksum %d)", name, (double)time / ITERATIONS,
+        (allocatedBefore < 0 ? "n/a" : String.format("%.1f", (double)allocated / ITERATIONS)), checksum));
+  }
+
+  private static int run(String name, Comparison comparison, int iterations) {
+    int checksum = 0;
+    for (int index = 0; index < iterations; index++) {
+      String[] versions = CASES[index % CASES.length];
+      checksum += comparison.compare(versions[0], versions[1]);
+    }
+    return checksum;
+  }
+
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * The implementation before the version comparison parsed the parts in
+   * place.
+   */
+  private static int legacyCompareVersionStrings(String left, String right) {
+    if ((left == null) || (right == null)) {
+      return 0;
+    }
+
+    try {
+      Scanner leftScanner = new Scanner(left.replaceAll("\\-.*", ""));
+      Scanner rightScanner = new Scanner(right.replaceAll("\\-.*", ""));
+      leftScanner.useDelimiter("\\.");
+      rightScanner.useDelimiter("\\.");
+
+      while ((leftScanner.hasNextInt()) && (rightScanner.hasNextInt())) {
+        int leftValue = leftScanner.nextInt();
+        int rightValue = rightScanner.nextInt();
+        if (leftValue < rightValue) {
+          return -1;
+        }
+        else if (leftValue > rightValue) {
+          return 1;
+        }
+      }
+
+      if (leftScanner.hasNextInt()) {
+        return 1;
+      }
+      else if (rightScanner.hasNextInt()) {
+        return -1;
+      }
+      else {
+        return 0;
+      }
+    }
+    catch (Exception e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package net.hockeyapp.android;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Immutable snapshot of the package and device information which is sent
+ * with crash reports, feedback and update checks. The snapshot is created
+ * once per process by {@link Constants#getAppInfo(android.content.Context)}.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class AppInfo {
+  private final String filesPath;
+  private final String appVersion;
+  private final String appVersionName;
+  private final String appPackage;
+  private final String androidVersion;
+  private final String phoneModel;
+  private final String phoneManufacturer;
+  private final String deviceIdentifier;
+  private final String crashIdentifier;
+
+  AppInfo(String filesPath, String appVersion, String appVersionName, String appPackage, String androidVersion,
+          String phoneModel, String phoneManufacturer, String deviceIdentifier, String crashIdentifier) {
+    this.filesPath = filesPath;
+    this.appVersion = appVersion;
+    this.appVersionName = appVersionName;
+    this.appPackage = appPackage;
+    this.androidVersion = androidVersion;
+    this.phoneModel = phoneModel;
+    this.phoneManufacturer = phoneManufacturer;
+    this.deviceIdentifier = deviceIdentifier;
+    this.crashIdentifier = crashIdentifier;
+  }
+
+  /**
+   * Returns the path where crash logs and temporary files are stored.
+   *
+   * @return the files path or null
+   */
+  public String getFilesPath() {
+    return filesPath;
+  }
+
+  /**
+   * Returns the app's version code or the build number from the manifest
+   * if it is larger.
+   *
+   * @return the version code
+   */
+  public String getAppVersion() {
+    return appVersion;
+  }
+
+  public String getAppVersionName() {
+    return appVersionName;
+  }
+
+  public String getAppPackage() {
+    return appPackage;
+  }
+
+  public String getAndroidVersion() {
+    return androidVersion;
+  }
+
+  public String getPhoneModel() {
+    return phoneModel;
+  }
+
+  public String getPhoneManufacturer() {
+    return phoneManufacturer;
+  }
+
+  /**
+   * Returns the value of Settings.Secure.ANDROID_ID.
+   *
+   * @return the device identifier or null
+   */
+  public String getDeviceIdentifier() {
+    return deviceIdentifier;
+  }
+
+  /**
+   * Returns the unique identifier for crash reports.
+   *
+   * @return the crash identifier or null
+   */
+  public String getCrashIdentifier() {
+    return crashIdentifier;
+  }
+}
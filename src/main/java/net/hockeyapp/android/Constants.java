@@ -16,7 +16,9 @@ import java.security.MessageDigest;
 /**
  * <h3>Description</h3>
  * 
- * Various constants and meta information loaded from the context.
+ * Various constants and meta information loaded from the context. The
+ * meta information is loaded once into an immutable {@link AppInfo}; the
+ * public fields are set from it for compatibility.
  * 
  * <h3>License</h3>
  * 
@@ -113,20 +115,60 @@ public class Constants {
    */
   public static final String SDK_VERSION = "3.5.0";
 
+  /**
+   * Snapshot of the package and device information, created once.
+   */
+  private static volatile AppInfo appInfo = null;
+
   /**
    * Initializes constants from the given context. The context is used to set 
-   * the package name, version code, and the files path.
+   * the package name, version code, and the files path. The values are only
+   * loaded on the first call, later calls return immediately.
    *
    * @param context The context to use. Usually your Activity object.
    */
   public static void loadFromContext(Context context) {
-    Constants.ANDROID_VERSION = android.os.Build.VERSION.RELEASE;
-    Constants.PHONE_MODEL = android.os.Build.MODEL;
-    Constants.PHONE_MANUFACTURER = android.os.Build.MANUFACTURER;
+    getAppInfo(context);
+  }
 
-    loadFilesPath(context);
-    loadPackageData(context);
-    loadCrashIdentifier(context);
+  /**
+   * Returns the snapshot of the package and device information. It is 
+   * loaded from the given context on the first call and then kept for the
+   * lifetime of the process.
+   *
+   * @param context The context to use. Usually your Activity object.
+   * @return The snapshot or null if it could not be loaded yet.
+   */
+  public static AppInfo getAppInfo(Context context) {
+    AppInfo result = appInfo;
+    if ((result == null) && (context != null)) {
+      synchronized (Constants.class) {
+        result = appInfo;
+        if (result == null) {
+          result = createAppInfo(context);
+
+          // Set the static fields before the snapshot becomes visible, so
+          // callers which skip the lock never read them half initialized
+          publish(result);
+
+          // Only keep complete snapshots, so a failure is retried on the next call
+          if (result.getAppPackage() != null) {
+            appInfo = result;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the snapshot of the package and device information if it was
+   * already loaded.
+   *
+   * @return The snapshot or null.
+   */
+  public static AppInfo getAppInfo() {
+    return appInfo;
   }
   
   /**
@@ -142,55 +184,71 @@ public class Constants {
     return dir;
   }
 
-  /**
-   * Helper method to set the files path. If an exception occurs, the files 
-   * path will be null!
-   * 
-   * @param context The context to use. Usually your Activity object.
-   */
-  private static void loadFilesPath(Context context) {
-    if (context != null) {
-      try {
-        File file = context.getFilesDir();
+  private static AppInfo createAppInfo(Context context) {
+    String filesPath = loadFilesPath(context);
 
-        // The file shouldn't be null, but apparently it still can happen, see
-        // http://code.google.com/p/android/issues/detail?id=8886
-        if (file != null) {
-          Constants.FILES_PATH = file.getAbsolutePath();
-        }
-      }
-      catch (Exception e) {
-        Log.e(TAG, "Exception thrown when accessing the files dir:");
-        e.printStackTrace();
+    String appPackage = null;
+    String appVersion = null;
+    String appVersionName = null;
+    try {
+      PackageManager packageManager = context.getPackageManager();
+      PackageInfo packageInfo = packageManager.getPackageInfo(context.getPackageName(), 0);
+      appPackage = packageInfo.packageName;
+      appVersion = "" + packageInfo.versionCode;
+      appVersionName = packageInfo.versionName;
+      
+      int buildNumber = loadBuildNumber(context, packageManager);
+      if ((buildNumber != 0) && (buildNumber > packageInfo.versionCode)) {
+        appVersion = "" + buildNumber;
       }
+    } 
+    catch (Exception e) {
+      Log.e(TAG, "Exception thrown when accessing the package info:");
+      e.printStackTrace();
     }
+
+    String deviceIdentifier = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+    String crashIdentifier = loadCrashIdentifier(appPackage, deviceIdentifier);
+
+    return new AppInfo(filesPath, appVersion, appVersionName, appPackage, android.os.Build.VERSION.RELEASE,
+        android.os.Build.MODEL, android.os.Build.MANUFACTURER, deviceIdentifier, crashIdentifier);
+  }
+
+  /**
+   * Sets the public fields from the given snapshot.
+   */
+  private static void publish(AppInfo info) {
+    Constants.FILES_PATH = info.getFilesPath();
+    Constants.APP_VERSION = info.getAppVersion();
+    Constants.APP_VERSION_NAME = info.getAppVersionName();
+    Constants.APP_PACKAGE = info.getAppPackage();
+    Constants.ANDROID_VERSION = info.getAndroidVersion();
+    Constants.PHONE_MODEL = info.getPhoneModel();
+    Constants.PHONE_MANUFACTURER = info.getPhoneManufacturer();
+    Constants.CRASH_IDENTIFIER = info.getCrashIdentifier();
   }
 
   /**
-   * Helper method to set the package name and version code. If an exception 
-   * occurs, these values will be null! 
+   * Helper method to load the files path. If an exception occurs, the files 
+   * path will be null!
    * 
    * @param context The context to use. Usually your Activity object.
    */
-  private static void loadPackageData(Context context) {
-    if (context != null) {
-      try {
-        PackageManager packageManager = context.getPackageManager();
-        PackageInfo packageInfo = packageManager.getPackageInfo(context.getPackageName(), 0);
-        Constants.APP_PACKAGE = packageInfo.packageName;
-        Constants.APP_VERSION = "" + packageInfo.versionCode;
-        Constants.APP_VERSION_NAME = packageInfo.versionName;
-        
-        int buildNumber = loadBuildNumber(context, packageManager);
-        if ((buildNumber != 0) && (buildNumber > packageInfo.versionCode)) {
-          Constants.APP_VERSION = "" + buildNumber;
-        }
-      } 
-      catch (Exception e) {
-        Log.e(TAG, "Exception thrown when accessing the package info:");
-        e.printStackTrace();
+  private static String loadFilesPath(Context context) {
+    try {
+      File file = context.getFilesDir();
+
+      // The file shouldn't be null, but apparently it still can happen, see
+      // http://code.google.com/p/android/issues/detail?id=8886
+      if (file != null) {
+        return file.getAbsolutePath();
       }
     }
+    catch (Exception e) {
+      Log.e(TAG, "Exception thrown when accessing the files dir:");
+      e.printStackTrace();
+    }
+    return null;
   }
 
   /**
@@ -218,31 +276,30 @@ public class Constants {
   /**
    * Helper method to load the crash identifier. 
    * 
-   * @param context the context to use. Usually your Activity object.
+   * @param appPackage the app's package name
+   * @param deviceIdentifier the value of Settings.Secure.ANDROID_ID
    */
-  private static void loadCrashIdentifier(Context context) {
-    String deviceIdentifier = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
-    if ((Constants.APP_PACKAGE != null) && (deviceIdentifier != null)) {
-      String combined = Constants.APP_PACKAGE + ":" + deviceIdentifier + ":" + createSalt(context);
+  private static String loadCrashIdentifier(String appPackage, String deviceIdentifier) {
+    if ((appPackage != null) && (deviceIdentifier != null)) {
+      String combined = appPackage + ":" + deviceIdentifier + ":" + createSalt();
       try {
           MessageDigest digest = MessageDigest.getInstance("SHA-1");
           byte[] bytes = combined.getBytes("UTF-8");
           digest.update(bytes, 0, bytes.length);
           bytes = digest.digest();
 
-          Constants.CRASH_IDENTIFIER = bytesToHex(bytes);
+          return bytesToHex(bytes);
       }
       catch (Throwable e) {
       }
     }
+    return null;
   }
 
   /**
    * Helper method to create a salt for the crash identifier. 
-   * 
-   * @param context the context to use. Usually your Activity object.
    */
-  private static String createSalt(Context context) {
+  private static String createSalt() {
     String fingerprint = "HA" + (Build.BOARD.length() % 10) + (Build.BRAND.length() % 10) + (Build.CPU_ABI.length() % 10) + (Build.PRODUCT.length() % 10);
 
     String serial = "";
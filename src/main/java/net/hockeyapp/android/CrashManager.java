@@ -14,13 +14,14 @@ import java.util.List;
 
 import android.preference.PreferenceManager;
 import net.hockeyapp.android.utils.ConnectionManager;
+import net.hockeyapp.android.utils.NetworkScheduler;
 import net.hockeyapp.android.utils.PrefsUtil;
 
 import net.hockeyapp.android.utils.Util;
+import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HTTP;
 
@@ -184,6 +185,11 @@ public class CrashManager {
     WeakReference<Context> weakContext = new WeakReference<Context>(context);
     
     int foundOrSend = hasStackTraces(weakContext);
+    if (foundOrSend != 0) {
+      // Crash reports will be sent, so connect while the user decides
+      ConnectionManager.getInstance().prepare(context, urlString);
+    }
+
     if (foundOrSend == 1) {
       Boolean autoSend = false;
       SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -349,7 +355,7 @@ public class CrashManager {
         }
         else
         {
-            new Thread(new Runnable() {
+            NetworkScheduler.execute(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -358,7 +364,7 @@ public class CrashManager {
                         e.printStackTrace();
                     }
                 }
-            }).start();
+            }, NetworkScheduler.Priority.CRASH);
         }
     }
 
@@ -366,7 +372,6 @@ public class CrashManager {
                                          String inUserId, String inContact, String inDescription) throws IOException {
         // Transmit stack trace with POST request
         Log.d(Constants.TAG, "Transmitting crash data: \n" + inStackTrace);
-        DefaultHttpClient httpClient = (DefaultHttpClient)ConnectionManager.getInstance().getHttpClient();
         HttpPost httpPost = new HttpPost(getURLString(inIdentifier));
 
         List <NameValuePair> parameters = new ArrayList <NameValuePair>();
@@ -379,7 +384,11 @@ public class CrashManager {
 
         httpPost.setEntity(new UrlEncodedFormEntity(parameters, HTTP.UTF_8));
 
-        httpClient.execute(httpPost);
+        HttpResponse response = ConnectionManager.getInstance().execute(httpPost);
+        if (response.getEntity() != null) {
+            // Release the connection, so it can be reused
+            response.getEntity().consumeContent();
+        }
     }
 
     /**
@@ -514,13 +523,13 @@ public class CrashManager {
     if (!submitting) {
       submitting = true;
       
-      new Thread() {
+      NetworkScheduler.execute(new Runnable() {
         @Override
         public void run() {
           submitStackTraces(weakContext, listener, inAppIdentifier);
           submitting = false;
         }
-      }.start();
+      }, NetworkScheduler.Priority.CRASH);
     }
   }
 
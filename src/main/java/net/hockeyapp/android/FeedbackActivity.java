@@ -20,20 +20,21 @@ import net.hockeyapp.android.adapters.MessagesAdapter;
 import net.hockeyapp.android.objects.ErrorObject;
 import net.hockeyapp.android.objects.FeedbackMessage;
 import net.hockeyapp.android.objects.FeedbackResponse;
+import net.hockeyapp.android.tasks.FeedbackPoller;
+import net.hockeyapp.android.tasks.FlushOutboxTask;
 import net.hockeyapp.android.tasks.ParseFeedbackTask;
 import net.hockeyapp.android.tasks.SendFeedbackTask;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.FeedbackStore;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
 import net.hockeyapp.android.utils.PrefsUtil;
 import net.hockeyapp.android.utils.Util;
 import net.hockeyapp.android.views.AttachmentListView;
 import net.hockeyapp.android.views.AttachmentView;
 import net.hockeyapp.android.views.FeedbackView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -103,7 +104,7 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
 
   /** Parse feedback {@link AsyncTask} */
   private ParseFeedbackTask parseFeedbackTask;
-  private Handler parseFeedbackHandler;
+  private ParseFeedbackTask.FeedbackParsedListener feedbackParsedListener;
 
   /** URL for HockeyApp API **/
   private String url;
@@ -124,6 +125,9 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
   /** Unique token of the message feed **/
   private String token;
 
+  /** Id of the newest stored message, only newer messages are fetched **/
+  private int lastMessageId = -1;
+
   /**
    * Enables/Disables the Send Feedback button.
    *
@@ -170,7 +174,7 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
   	    break;
 
   	  case FeedbackView.REFRESH_BUTTON_ID:
-  	    sendFetchFeedback(url, null, null, null, null, null, PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context), feedbackHandler, true);
+  	    fetchFeedback(true);
   	    break;
 
   	  default:
@@ -226,8 +230,11 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
     notificationManager.cancel(ParseFeedbackTask.NEW_ANSWER_NOTIFICATION_ID);
 
     initFeedbackHandler();
-    initParseFeedbackHandler();
+    initFeedbackParsedListener();
     configureAppropriateView();
+
+    // Send messages which couldn't be sent before
+    FlushOutboxTask.flush(this);
   }
 
   /**
@@ -509,18 +516,72 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
       configureFeedbackView(false);
     }
     else {
-      /** If Feedback Token is NOT NULL, show the Add Response Button and fetch the feedback messages */
+      /** If Feedback Token is NOT NULL, show the Add Response Button, the stored messages and fetch the new ones */
       configureFeedbackView(true);
-      sendFetchFeedback(url, null, null, null, null, null, token, feedbackHandler, true);
+      loadStoredFeedback();
     }
   }
 
+  /**
+   * Shows the stored messages and fetches the messages which are newer.
+   * The progress dialog is only shown if nothing is stored.
+   */
+  private void loadStoredFeedback() {
+    AsyncTaskUtils.execute(new AsyncTask<Void, Void, FeedbackResponse>() {
+      @Override
+      protected FeedbackResponse doInBackground(Void... params) {
+        return FeedbackStore.getFeedbackResponse(context, token);
+      }
+
+      @Override
+      protected void onPostExecute(FeedbackResponse storedResponse) {
+        if (storedResponse != null) {
+          lastMessageId = FeedbackStore.getLastMessageId(storedResponse);
+          loadFeedbackMessages(storedResponse);
+        }
+        else {
+          lastMessageId = -1;
+        }
+
+        fetchFeedback(storedResponse == null);
+      }
+    }, Priority.FEEDBACK);
+  }
+
+  /**
+   * Fetches the messages which are newer than the last stored message.
+   *
+   * @param showProgressDialog true to show a progress dialog
+   */
+  private void fetchFeedback(boolean showProgressDialog) {
+    token = PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context);
+    sendFeedbackTask = new SendFeedbackTask(context, url, null, null, null, null, null, token, feedbackHandler, true);
+    sendFeedbackTask.setLastMessageId(lastMessageId);
+    sendFeedbackTask.setShowProgressDialog(showProgressDialog);
+    setResponseParser(sendFeedbackTask, "fetch");
+    AsyncTaskUtils.execute(sendFeedbackTask, Priority.FEEDBACK);
+  }
+
   /**
    * Initializes the {@link ParseFeedbackTask}
-   * @param feedbackResponseString	JSON string response
+   * @param feedbackResponseString	JSON string response or null if the task parses the response stream
    */
   private void createParseFeedbackTask(String feedbackResponseString, String requestType) {
-  	parseFeedbackTask = new ParseFeedbackTask(this, feedbackResponseString, parseFeedbackHandler, requestType);
+  	parseFeedbackTask = new ParseFeedbackTask(this, feedbackResponseString, null, requestType);
+    parseFeedbackTask.setFeedbackParsedListener(feedbackParsedListener);
+    if (requestType.equals("fetch")) {
+      /** The response only contains the messages after the last stored message */
+      parseFeedbackTask.setLastMessageId(lastMessageId);
+    }
+  }
+
+  /**
+   * Sets a {@link ParseFeedbackTask} as response parser, so the response
+   * is parsed while it is read.
+   */
+  private void setResponseParser(SendFeedbackTask task, String requestType) {
+    createParseFeedbackTask(null, requestType);
+    task.setResponseParser(parseFeedbackTask);
   }
 
   private void hideKeyboard() {
@@ -543,9 +604,15 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
         if (msg != null && msg.getData() != null) {
           Bundle bundle = msg.getData();
           String responseString = bundle.getString("feedback_response");
+          boolean parsed = "true".equals(bundle.getString("feedback_parsed"));
           String statusCode = bundle.getString("feedback_status");
           String requestType = bundle.getString("request_type");
-          if ((requestType.equals("send") && ((responseString == null) || (Integer.parseInt(statusCode) != 201)))) {
+          if ((requestType.equals("send")) && ("true".equals(bundle.getString("feedback_queued")))) {
+            // The message is in the outbox and sent when the device is online
+            onFeedbackQueued();
+            success = true;
+          }
+          else if ((requestType.equals("send") && (((responseString == null) && (!parsed)) || (Integer.parseInt(statusCode) != 201)))) {
             // Send feedback went wrong if response is empty or status code != 201
             error.setMessage(Strings.get(Strings.FEEDBACK_SEND_GENERIC_ERROR_ID));
           }
@@ -554,9 +621,16 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
             resetFeedbackView();
             success = true;
           }
-          else if (responseString != null) {
-            startParseFeedbackTask(responseString, requestType);
+          else if ((responseString != null) || (parsed)) {
+            if (!parsed) {
+              startParseFeedbackTask(responseString, requestType);
+            }
             success = true;
+
+            if (requestType.equals("send")) {
+              // An answer is likely soon, so check more often
+              FeedbackPoller.onMessageSent();
+            }
           }
           else {
             error.setMessage(Strings.get(Strings.FEEDBACK_SEND_NETWORK_ERROR_ID));
@@ -582,34 +656,54 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
   }
 
   /**
-   * Initialize the Feedback response parse result {@link Handler}
+   * Resets the input fields after the message was put into the outbox and
+   * starts sending the outbox.
    */
-  private void initParseFeedbackHandler() {
-    parseFeedbackHandler = new Handler() {
+  private void onFeedbackQueued() {
+    Toast.makeText(this, Strings.get(Strings.FEEDBACK_SEND_QUEUED_ID), Toast.LENGTH_LONG).show();
+
+    if (PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context) != null) {
+      inSendFeedback = false;
+      configureFeedbackView(true);
+    }
+    else {
+      configureFeedbackView(false);
+    }
+    enableDisableSendFeedbackButton(true);
+
+    FlushOutboxTask.flush(this);
+  }
+
+  /**
+   * Initialize the Feedback response parse result listener
+   */
+  private void initFeedbackParsedListener() {
+    feedbackParsedListener = new ParseFeedbackTask.FeedbackParsedListener() {
       @Override
-      public void handleMessage(Message msg) {
+      public void onFeedbackParsed(FeedbackResponse feedbackResponse) {
         boolean success = false;
         error = new ErrorObject();
 
-        if (msg != null && msg.getData() != null) {
-          Bundle bundle = msg.getData();
-          FeedbackResponse feedbackResponse = (FeedbackResponse) bundle.getSerializable("parse_feedback_response");
-          if (feedbackResponse != null) {
-            if (feedbackResponse.getStatus().equalsIgnoreCase("success")) {
-              /** We have a valid result from JSON parsing */
-              success = true;
-
-              if (feedbackResponse.getToken() != null) {
-                /** Save the Token to SharedPreferences */
-                PrefsUtil.getInstance().saveFeedbackTokenToPrefs(context, feedbackResponse.getToken());
-                /** Load the existing feedback messages */
-                loadFeedbackMessages(feedbackResponse);
-                inSendFeedback = false;
+        if (feedbackResponse != null) {
+          if (feedbackResponse.getStatus().equalsIgnoreCase("success")) {
+            /** We have a valid result from JSON parsing */
+            success = true;
+
+            if (feedbackResponse.getToken() != null) {
+              /** Save the Token to SharedPreferences */
+              PrefsUtil.getInstance().saveFeedbackTokenToPrefs(context, feedbackResponse.getToken());
+              // A fetch without new messages keeps the shown thread
+              int responseLastMessageId = FeedbackStore.getLastMessageId(feedbackResponse);
+              if (responseLastMessageId != -1) {
+                lastMessageId = responseLastMessageId;
               }
+              /** Load the existing feedback messages */
+              loadFeedbackMessages(feedbackResponse);
+              inSendFeedback = false;
             }
-            else {
-              success = false;
-            }
+          }
+          else {
+            success = false;
           }
         }
 
@@ -641,10 +735,6 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
     	public void run() {
     		configureFeedbackView(true);
 
-    		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    		SimpleDateFormat formatNew = new SimpleDateFormat("d MMM h:mm a");
-
-    		Date date = null;
     		if (feedbackResponse != null && feedbackResponse.getFeedback() != null &&
     				feedbackResponse.getFeedback().getMessages() != null && feedbackResponse.
     				getFeedback().getMessages().size() > 0) {
@@ -654,12 +744,9 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
     			Collections.reverse(feedbackMessages);
 
     			/** Set the lastUpdatedTextView text as the date of the latest feedback message */
-    			try {
-    				date = format.parse(feedbackMessages.get(0).getCreatedAt());
-    				lastUpdatedTextView.setText(String.format("Last Updated: %s", formatNew.format(date)));
-    			}
-    			catch (ParseException e1) {
-    				e1.printStackTrace();
+    			String displayDate = feedbackMessages.get(0).getDisplayDate();
+    			if (displayDate != null) {
+    				lastUpdatedTextView.setText(String.format("Last Updated: %s", displayDate));
     			}
 
     			if (messagesAdapter == null) {
@@ -685,6 +772,8 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
       @Override
       public void run() {
         PrefsUtil.getInstance().saveFeedbackTokenToPrefs(FeedbackActivity.this, null);
+        FeedbackStore.clear(FeedbackActivity.this);
+        lastMessageId = -1;
 
         SharedPreferences preferences = getSharedPreferences(ParseFeedbackTask.PREFERENCES_NAME, 0);
         PrefsUtil.applyChanges(preferences.edit()
@@ -757,7 +846,9 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
    */
   private void sendFetchFeedback(String url, String name, String email, String subject, String text, List<Uri> attachmentUris, String token, Handler feedbackHandler, boolean isFetchMessages) {
     sendFeedbackTask = new SendFeedbackTask(context, url, name, email, subject, text, attachmentUris, token, feedbackHandler, isFetchMessages);
-    AsyncTaskUtils.execute(sendFeedbackTask);
+    sendFeedbackTask.setQueueOnFailure(!isFetchMessages);
+    setResponseParser(sendFeedbackTask, (isFetchMessages ? "fetch" : "send"));
+    AsyncTaskUtils.execute(sendFeedbackTask, Priority.FEEDBACK);
   }
 
   /**
@@ -766,6 +857,6 @@ public class FeedbackActivity extends Activity implements FeedbackActivityInterf
    */
   private void startParseFeedbackTask(String feedbackResponseString, String requestType) {
   	createParseFeedbackTask(feedbackResponseString, requestType);
-    AsyncTaskUtils.execute(parseFeedbackTask);
+    AsyncTaskUtils.execute(parseFeedbackTask, Priority.FEEDBACK);
   }
 }
@@ -12,16 +12,12 @@ import android.graphics.Bitmap;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
-import net.hockeyapp.android.tasks.ParseFeedbackTask;
-import net.hockeyapp.android.tasks.SendFeedbackTask;
-import net.hockeyapp.android.utils.AsyncTaskUtils;
-import net.hockeyapp.android.utils.PrefsUtil;
+import net.hockeyapp.android.tasks.FeedbackPoller;
+import net.hockeyapp.android.tasks.FlushOutboxTask;
+import net.hockeyapp.android.utils.ConnectionManager;
 import net.hockeyapp.android.utils.Util;
 
 import java.io.File;
@@ -143,6 +139,10 @@ public class FeedbackManager {
       FeedbackManager.lastListener = listener;
     
       Constants.loadFromContext(context);
+      ConnectionManager.getInstance().prepare(context, urlString);
+
+      /** Send the messages which couldn't be sent before */
+      FlushOutboxTask.flush(context);
     }
   }
 
@@ -177,35 +177,31 @@ public class FeedbackManager {
 
   /**
    * Checks if an answer to the feedback is available and if yes notifies the listener or
-   * creates a system notification.
+   * creates a system notification. The check is skipped if no feedback was sent yet, if
+   * a check is running or if the last check was less than 30 seconds ago.
    *
    * @param context the context to use
    */
   public static void checkForAnswersAndNotify(final Context context) {
-    String token = PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context);
-    if (token == null) {
-      return;
-    }
+    FeedbackPoller.checkNow(context, getURLString(context));
+  }
 
-    int lastMessageId = context.getSharedPreferences(ParseFeedbackTask.PREFERENCES_NAME, 0)
-        .getInt(ParseFeedbackTask.ID_LAST_MESSAGE_SEND, -1);
+  /**
+   * Starts checking for answers in the background. The interval grows while there are
+   * no answers and is short again after the user sent a message. Call this in onResume
+   * and {@link #stopPolling()} in onPause of your activity.
+   *
+   * @param context the context to use
+   */
+  public static void startPolling(Context context) {
+    FeedbackPoller.start(context, getURLString(context));
+  }
 
-    SendFeedbackTask sendFeedbackTask = new SendFeedbackTask(context, getURLString(context), null, null, null, null, null, token, new Handler() {
-      @Override
-      public void handleMessage(Message msg) {
-        Bundle bundle = msg.getData();
-        String responseString = bundle.getString("feedback_response");
-
-        if (responseString != null) {
-          ParseFeedbackTask task = new ParseFeedbackTask(context, responseString, null, "fetch");
-          task.setUrlString(getURLString(context));
-          AsyncTaskUtils.execute(task);
-        }
-      }
-    }, true);
-    sendFeedbackTask.setShowProgressDialog(false);
-    sendFeedbackTask.setLastMessageId(lastMessageId);
-    AsyncTaskUtils.execute(sendFeedbackTask);
+  /**
+   * Stops checking for answers in the background.
+   */
+  public static void stopPolling() {
+    FeedbackPoller.stop();
   }
 
   /**
@@ -56,6 +56,9 @@ public class LocaleManager {
     loadFromResources("hockeyapp_download_failed_dialog_message", Strings.DOWNLOAD_FAILED_DIALOG_MESSAGE_ID, context);
     loadFromResources("hockeyapp_download_failed_dialog_negative_button", Strings.DOWNLOAD_FAILED_DIALOG_NEGATIVE_BUTTON_ID, context);
     loadFromResources("hockeyapp_download_failed_dialog_positive_button", Strings.DOWNLOAD_FAILED_DIALOG_POSITIVE_BUTTON_ID, context);
+    loadFromResources("hockeyapp_download_progress_message", Strings.DOWNLOAD_PROGRESS_MESSAGE_ID, context);
+    loadFromResources("hockeyapp_download_progress_speed", Strings.DOWNLOAD_PROGRESS_SPEED_ID, context);
+    loadFromResources("hockeyapp_download_progress_remaining", Strings.DOWNLOAD_PROGRESS_REMAINING_ID, context);
 
     // Update
     loadFromResources("hockeyapp_update_mandatory_toast", Strings.UPDATE_MANDATORY_TOAST_ID, context);
@@ -63,6 +66,7 @@ public class LocaleManager {
     loadFromResources("hockeyapp_update_dialog_message", Strings.UPDATE_DIALOG_MESSAGE_ID, context);
     loadFromResources("hockeyapp_update_dialog_negative_button", Strings.UPDATE_DIALOG_NEGATIVE_BUTTON_ID, context);
     loadFromResources("hockeyapp_update_dialog_positive_button", Strings.UPDATE_DIALOG_POSITIVE_BUTTON_ID, context);
+    loadFromResources("hockeyapp_update_release_notes_more", Strings.UPDATE_RELEASE_NOTES_MORE_ID, context);
 
     // Expiry Info
     loadFromResources("hockeyapp_expiry_info_title", Strings.EXPIRY_INFO_TITLE_ID, context);
@@ -89,6 +93,9 @@ public class LocaleManager {
     loadFromResources("hockeyapp_feedback_validate_name_error", Strings.FEEDBACK_VALIDATE_NAME_ERROR_ID, context);
     loadFromResources("hockeyapp_feedback_validate_text_error", Strings.FEEDBACK_VALIDATE_TEXT_ERROR_ID, context);
     loadFromResources("hockeyapp_feedback_generic_error", Strings.FEEDBACK_GENERIC_ERROR_ID, context);
+    loadFromResources("hockeyapp_feedback_send_queued", Strings.FEEDBACK_SEND_QUEUED_ID, context);
+    loadFromResources("hockeyapp_feedback_send_dropped_title", Strings.FEEDBACK_SEND_DROPPED_TITLE_ID, context);
+    loadFromResources("hockeyapp_feedback_send_dropped_text", Strings.FEEDBACK_SEND_DROPPED_TEXT_ID, context);
 
     // Login Activity
     loadFromResources("hockeyapp_login_headline_text", Strings.LOGIN_HEADLINE_TEXT_ID, context);
@@ -13,6 +13,7 @@ import android.widget.EditText;
 import android.widget.Toast;
 import net.hockeyapp.android.tasks.LoginTask;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
 import net.hockeyapp.android.views.LoginView;
 
 import java.security.MessageDigest;
@@ -154,7 +155,7 @@ public class LoginActivity extends Activity implements View.OnClickListener {
 
     if (ready) {
       loginTask = new LoginTask(this, loginHandler, url, mode, params);
-      AsyncTaskUtils.execute(loginTask);
+      AsyncTaskUtils.execute(loginTask, Priority.LOGIN);
     }
     else {
       Toast.makeText(this, Strings.get(Strings.LOGIN_MISSING_CREDENTIALS_TOAST_ID), 1000).show();
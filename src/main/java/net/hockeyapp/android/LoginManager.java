@@ -9,6 +9,7 @@ import android.os.Handler;
 import android.os.Message;
 import net.hockeyapp.android.tasks.LoginTask;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
 import net.hockeyapp.android.utils.PrefsUtil;
 import net.hockeyapp.android.utils.Util;
 
@@ -212,7 +213,7 @@ public class LoginManager {
 
     LoginTask verifyTask = new LoginTask(context, validateHandler, getURLString(LOGIN_MODE_VALIDATE), LOGIN_MODE_VALIDATE, params);
     verifyTask.setShowProgressDialog(false);
-    AsyncTaskUtils.execute(verifyTask);
+    AsyncTaskUtils.execute(verifyTask, Priority.LOGIN);
   }
 
   private static void startLoginActivity(Context context) {
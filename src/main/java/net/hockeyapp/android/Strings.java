@@ -74,6 +74,15 @@ public class Strings {
   /** Resource ID for the label on the positive button of the dialog when the apk download failed. */
   public final static int DOWNLOAD_FAILED_DIALOG_POSITIVE_BUTTON_ID = 0x103;
 
+  /** Resource ID for the message of the progress dialog while the apk is downloaded. */
+  public final static int DOWNLOAD_PROGRESS_MESSAGE_ID              = 0x104;
+
+  /** Resource ID for the download speed in the progress dialog, formatted with the MB per second. */
+  public final static int DOWNLOAD_PROGRESS_SPEED_ID                = 0x105;
+
+  /** Resource ID for the remaining time in the progress dialog, formatted with the seconds left. */
+  public final static int DOWNLOAD_PROGRESS_REMAINING_ID            = 0x106;
+
   ///////////////////////////////////////////////////
   // Update
   ///////////////////////////////////////////////////
@@ -93,6 +102,9 @@ public class Strings {
   /** Resource ID for the label on the positive button of the dialog when a new update was found. */
   public final static int UPDATE_DIALOG_POSITIVE_BUTTON_ID = 0x204;
 
+  /** Resource ID for the link at the end of the release notes which shows older versions. */
+  public final static int UPDATE_RELEASE_NOTES_MORE_ID     = 0x205;
+
   ///////////////////////////////////////////////////
   // Expiry Info
   ///////////////////////////////////////////////////
@@ -167,6 +179,15 @@ public class Strings {
    /** Resource ID for the message when the text field is not filled out. */
    public static final int FEEDBACK_VALIDATE_TEXT_ERROR_ID = 0x413;
 
+  /** Resource ID for the message when the feedback is queued to be sent later. */
+  public final static int FEEDBACK_SEND_QUEUED_ID            = 0x414;
+
+  /** Resource ID for the title of the notification when a queued feedback couldn't be sent. */
+  public final static int FEEDBACK_SEND_DROPPED_TITLE_ID     = 0x415;
+
+  /** Resource ID for the text of the notification when a queued feedback couldn't be sent. */
+  public final static int FEEDBACK_SEND_DROPPED_TEXT_ID      = 0x416;
+
   ///////////////////////////////////////////////////
   // Login Activity
   ///////////////////////////////////////////////////
@@ -228,6 +249,9 @@ public class Strings {
     DEFAULT.put(DOWNLOAD_FAILED_DIALOG_MESSAGE_ID,         "The update could not be downloaded. Would you like to try again?");
     DEFAULT.put(DOWNLOAD_FAILED_DIALOG_NEGATIVE_BUTTON_ID, "Cancel");
     DEFAULT.put(DOWNLOAD_FAILED_DIALOG_POSITIVE_BUTTON_ID, "Retry");
+    DEFAULT.put(DOWNLOAD_PROGRESS_MESSAGE_ID,              "Loading...");
+    DEFAULT.put(DOWNLOAD_PROGRESS_SPEED_ID,                "%.1f MB/s");
+    DEFAULT.put(DOWNLOAD_PROGRESS_REMAINING_ID,            "%d s left");
 
     // Update
     DEFAULT.put(UPDATE_MANDATORY_TOAST_ID,        "Please install the latest version to continue to use this app.");
@@ -235,6 +259,7 @@ public class Strings {
     DEFAULT.put(UPDATE_DIALOG_MESSAGE_ID,         "Show information about the new update?");
     DEFAULT.put(UPDATE_DIALOG_NEGATIVE_BUTTON_ID, "Dismiss");
     DEFAULT.put(UPDATE_DIALOG_POSITIVE_BUTTON_ID, "Show");
+    DEFAULT.put(UPDATE_RELEASE_NOTES_MORE_ID,     "Show older versions");
 
     // Expiry Info
     DEFAULT.put(EXPIRY_INFO_TITLE_ID, "Build Expired");
@@ -261,6 +286,9 @@ public class Strings {
     DEFAULT.put(FEEDBACK_VALIDATE_TEXT_ERROR_ID,    "Please enter a feedback text");
     DEFAULT.put(FEEDBACK_VALIDATE_EMAIL_ERROR_ID,   "Message couldn't be posted. Please check the format of your email address.");
     DEFAULT.put(FEEDBACK_GENERIC_ERROR_ID,          "An error has occured");
+    DEFAULT.put(FEEDBACK_SEND_QUEUED_ID,            "Your feedback will be sent as soon as you are online.");
+    DEFAULT.put(FEEDBACK_SEND_DROPPED_TITLE_ID,     "Feedback not sent");
+    DEFAULT.put(FEEDBACK_SEND_DROPPED_TEXT_ID,      "Your feedback couldn't be sent. Tap to write it again.");
 
     // Login Activity
     DEFAULT.put(LOGIN_HEADLINE_TEXT_ID,             "Please enter your account credentials.");
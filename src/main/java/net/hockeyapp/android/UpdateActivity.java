@@ -5,6 +5,8 @@ import net.hockeyapp.android.objects.ErrorObject;
 import net.hockeyapp.android.tasks.DownloadFileTask;
 import net.hockeyapp.android.tasks.GetFileSizeTask;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import net.hockeyapp.android.utils.ReleaseNotesPager;
 import net.hockeyapp.android.utils.VersionHelper;
 import net.hockeyapp.android.views.UpdateView;
 import android.Manifest;
@@ -74,6 +76,20 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
    * Helper for version management.
    */
   protected VersionHelper versionHelper;
+
+  /**
+   * Loads the release notes page by page.
+   */
+  protected ReleaseNotesPager releaseNotesPager;
+
+  /**
+   * Objects kept while the activity is re-created.
+   */
+  private static class RetainedInstance {
+    private DownloadFileTask downloadTask;
+    private VersionHelper versionHelper;
+    private ReleaseNotesPager releaseNotesPager;
+  }
   
   /**
    * Called when the activity is starting. Sets the title and content view.
@@ -91,10 +107,19 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
     setContentView(getLayoutView());
 
     context = this;
-    versionHelper = new VersionHelper(this, getIntent().getStringExtra("json"), this);
+
+    RetainedInstance instance = (RetainedInstance)getLastNonConfigurationInstance();
+    if (instance != null) {
+      downloadTask = instance.downloadTask;
+      versionHelper = instance.versionHelper;
+      releaseNotesPager = instance.releaseNotesPager;
+    }
+
+    if (versionHelper == null) {
+      versionHelper = new VersionHelper(this, getIntent().getStringExtra("json"), this);
+    }
     configureView();
     
-    downloadTask = (DownloadFileTask)getLastNonConfigurationInstance();
     if (downloadTask != null) {
       downloadTask.attach(this);
     }
@@ -128,7 +153,7 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
           }
         }
       });
-      AsyncTaskUtils.execute(task);
+      AsyncTaskUtils.execute(task, Priority.UPDATE_CHECK);
     }
     versionLabel.setText(versionString + "\n" + fileDate + " - " + appSizeString);
     
@@ -138,11 +163,16 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
     WebView webView = (WebView)findViewById(UpdateView.WEB_VIEW_ID);
     webView.clearCache(true);
     webView.destroyDrawingCache();
-    webView.loadDataWithBaseURL(Constants.BASE_URL, getReleaseNotes(), "text/html", "utf-8", null);
+
+    if (releaseNotesPager == null) {
+      releaseNotesPager = new ReleaseNotesPager(versionHelper, false);
+    }
+    releaseNotesPager.attach(webView);
   }
 
   /**
-   * Returns the release notes as HTML.
+   * Returns the release notes of all versions as HTML. The view loads 
+   * the release notes page by page through the ReleaseNotesPager instead.
    * 
    * @return String with release notes.
    */
@@ -152,17 +182,26 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
 
   /**
    * Detaches the activity from the download task and returns the task
-   * as last instance. This way the task is restored when the activity
-   * is immediately re-created.
+   * together with the version helper and its rendered release notes as
+   * last instance. This way they are restored when the activity is 
+   * immediately re-created.
    * 
-   * @return The download task if present.
+   * @return The retained objects.
    */
   @Override
   public Object onRetainNonConfigurationInstance() {
     if (downloadTask != null) {
       downloadTask.detach();
     }
-    return downloadTask;
+    if (releaseNotesPager != null) {
+      releaseNotesPager.detach();
+    }
+
+    RetainedInstance instance = new RetainedInstance();
+    instance.downloadTask = downloadTask;
+    instance.versionHelper = versionHelper;
+    instance.releaseNotesPager = releaseNotesPager;
+    return instance;
   }
   
   /**
@@ -206,11 +245,11 @@ public class UpdateActivity extends Activity implements UpdateActivityInterface,
         }
       }
     });
-    AsyncTaskUtils.execute(downloadTask);
+    AsyncTaskUtils.execute(downloadTask, Priority.UPDATE_CHECK);
   }
   
   protected void createDownloadTask(String url, DownloadFileListener listener) {
-    downloadTask = new DownloadFileTask(this, url, listener);
+    downloadTask = new DownloadFileTask(this, url, versionHelper.getNewestVersion(), listener);
   }
   
   /**
@@ -4,6 +4,8 @@ import net.hockeyapp.android.listeners.DownloadFileListener;
 import net.hockeyapp.android.tasks.DownloadFileTask;
 import net.hockeyapp.android.tasks.GetFileSizeTask;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import net.hockeyapp.android.utils.ReleaseNotesPager;
 import net.hockeyapp.android.utils.VersionHelper;
 import net.hockeyapp.android.views.UpdateView;
 
@@ -155,7 +157,7 @@ public class UpdateFragment extends DialogFragment implements OnClickListener, U
           }
         }
       });
-      AsyncTaskUtils.execute(task);
+      AsyncTaskUtils.execute(task, Priority.UPDATE_CHECK);
     }
     versionLabel.setText(versionString + "\n" + fileDate + " - " + appSizeString);
 
@@ -165,7 +167,7 @@ public class UpdateFragment extends DialogFragment implements OnClickListener, U
     WebView webView = (WebView)view.findViewById(UpdateView.WEB_VIEW_ID);
     webView.clearCache(true);
     webView.destroyDrawingCache();
-    webView.loadDataWithBaseURL(Constants.BASE_URL, versionHelper.getReleaseNotes(false), "text/html", "utf-8", null);
+    new ReleaseNotesPager(versionHelper, false).attach(webView);
 
     return view;
   }
@@ -184,7 +186,7 @@ public class UpdateFragment extends DialogFragment implements OnClickListener, U
    * download, a failed download, and configuration strings.
    */
   private void startDownloadTask(final Activity activity) {
-    downloadTask = new DownloadFileTask(activity, urlString, new DownloadFileListener() {
+    downloadTask = new DownloadFileTask(activity, urlString, versionHelper.getNewestVersion(), new DownloadFileListener() {
       public void downloadFailed(DownloadFileTask task, Boolean userWantsRetry) {
         if (userWantsRetry) {
           startDownloadTask(activity);
@@ -205,7 +207,7 @@ public class UpdateFragment extends DialogFragment implements OnClickListener, U
         }
       }
     });
-    AsyncTaskUtils.execute(downloadTask);
+    AsyncTaskUtils.execute(downloadTask, Priority.UPDATE_CHECK);
   }
   
   /**
@@ -5,14 +5,14 @@ import java.util.Date;
 
 import net.hockeyapp.android.tasks.CheckUpdateTask;
 import net.hockeyapp.android.tasks.CheckUpdateTaskWithUI;
-import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.tasks.UpdateCheckCoordinator;
+import net.hockeyapp.android.utils.ConnectionManager;
 import net.hockeyapp.android.utils.Util;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.Fragment;
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask.Status;
 import android.text.TextUtils;
 
 /**
@@ -51,11 +51,6 @@ import android.text.TextUtils;
  * @author Thomas Dohmke
  **/
 public class UpdateManager {
-  /**
-   * Singleton for update task.
-   */
-  private static CheckUpdateTask updateTask = null;
-  
   /**
    * Last listener instance.
    */
@@ -114,6 +109,7 @@ public class UpdateManager {
     }
 
     if ((!checkExpiryDate(weakActivity, listener)) && ((listener != null && listener.canUpdateInMarket()) || !installedFromMarket(weakActivity))) {
+      ConnectionManager.getInstance().prepare(activity, urlString);
       startUpdateTask(weakActivity, urlString, appIdentifier, listener, isDialogRequired);
     }
   }
@@ -145,6 +141,7 @@ public class UpdateManager {
     WeakReference<Context> weakContext = new WeakReference<Context>(appContext);
 
     if ((!checkExpiryDateForBackground(listener)) && ((listener != null && listener.canUpdateInMarket()) || !installedFromMarket(weakContext))) {
+      ConnectionManager.getInstance().prepare(appContext, urlString);
       startUpdateTaskForBackground(weakContext, urlString, appIdentifier, listener);
     }
   }
@@ -153,11 +150,7 @@ public class UpdateManager {
    * Unregisters the update manager
    */
   public static void unregister() {
-    if (updateTask != null) {
-      updateTask.cancel(true);
-      updateTask.detach();
-      updateTask = null;
-    }
+    UpdateCheckCoordinator.cancel();
 
     lastListener = null;
   }
@@ -233,31 +226,19 @@ public class UpdateManager {
   }
 
   /**
-   * Starts the UpdateTask if not already running. Otherwise attaches the
-   * activity to it. 
+   * Starts the UpdateTask if no check is running. Otherwise the task gets
+   * the result of the running check.
    */
   private static void startUpdateTask(WeakReference<Activity> weakActivity, String urlString, String appIdentifier, UpdateManagerListener listener, boolean isDialogRequired) {
-    if ((updateTask == null) || (updateTask.getStatus() == Status.FINISHED)) {
-      updateTask = new CheckUpdateTaskWithUI(weakActivity, urlString, appIdentifier, listener, isDialogRequired);
-      AsyncTaskUtils.execute(updateTask);
-    }
-    else {
-      updateTask.attach(weakActivity);
-    }
+    UpdateCheckCoordinator.submit(new CheckUpdateTaskWithUI(weakActivity, urlString, appIdentifier, listener, isDialogRequired));
   }
 
   /**
-   * Starts the UpdateTask if not already running. Otherwise attaches the
-   * activity to it.
+   * Starts the UpdateTask if no check is running. Otherwise the task gets
+   * the result of the running check.
    */
   private static void startUpdateTaskForBackground(WeakReference<Context> weakContext, String urlString, String appIdentifier, UpdateManagerListener listener) {
-    if ((updateTask == null) || (updateTask.getStatus() == Status.FINISHED)) {
-      updateTask = new CheckUpdateTask(weakContext, urlString, appIdentifier, listener);
-      AsyncTaskUtils.execute(updateTask);
-    }
-    else {
-      updateTask.attach(weakContext);
-    }
+    UpdateCheckCoordinator.submit(new CheckUpdateTask(weakContext, urlString, appIdentifier, listener));
   }
 
   /**
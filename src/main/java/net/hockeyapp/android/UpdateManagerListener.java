@@ -1,5 +1,7 @@
 package net.hockeyapp.android;
 
+import net.hockeyapp.android.utils.UpdateCheckScheduler;
+
 import org.json.JSONArray;
 
 import java.util.Date;
@@ -80,6 +82,18 @@ public abstract class UpdateManagerListener extends StringListener {
     onUpdateAvailable();
   }
   
+  /**
+   * Return the minimum interval between two update checks which are 
+   * registered with registerForBackground. Within this interval or the 
+   * max-age sent by the server, the result is taken from the cache. 
+   * A random jitter is added to spread the checks of all devices.
+   *
+   * @return interval in milliseconds
+   */
+  public long getBackgroundCheckInterval() {
+    return UpdateCheckScheduler.DEFAULT_INTERVAL;
+  }
+  
   /**
    * Return an expiry date for this build or null. After this date the
    * build will be blocked by a dialog.
@@ -12,10 +12,7 @@ import net.hockeyapp.android.views.AttachmentListView;
 import net.hockeyapp.android.views.AttachmentView;
 import net.hockeyapp.android.views.FeedbackMessageView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 
 /**
  * <h3>License</h3>
@@ -46,22 +43,29 @@ import java.util.Date;
  * </pre>
  */
 public class MessagesAdapter extends BaseAdapter {
+  /**
+   * Maximum number of unused attachment views which are kept for reuse.
+   */
+  private static final int MAX_POOLED_ATTACHMENT_VIEWS = 12;
+
+  /**
+   * Holds the child views of a row, so they are only looked up once.
+   */
+  private static class ViewHolder {
+    TextView authorTextView;
+    TextView dateTextView;
+    TextView messageTextView;
+    AttachmentListView attachmentListView;
+  }
+
   private Context context;
   private ArrayList<FeedbackMessage> messagesList;
-  private SimpleDateFormat format;
-  private SimpleDateFormat formatNew;
-  private Date date;
-  private TextView authorTextView;
-  private TextView dateTextView;
-  private TextView messageTextView;
-  private AttachmentListView attachmentListView;
+  private final ArrayList<AttachmentView> attachmentViewPool;
 
   public MessagesAdapter(Context context, ArrayList<FeedbackMessage> messagesList) {
     this.context = context;
     this.messagesList = messagesList;
-    
-    format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    formatNew = new SimpleDateFormat("d MMM h:mm a");
+    this.attachmentViewPool = new ArrayList<AttachmentView>();
   }
 
   public int getCount() {
@@ -72,36 +76,30 @@ public class MessagesAdapter extends BaseAdapter {
   public View getView(final int position, View convertView, ViewGroup parent) {
     final FeedbackMessage feedbackMessage = messagesList.get(position);
     FeedbackMessageView view;
+    ViewHolder holder;
   
     if (convertView == null) {
       view = new FeedbackMessageView(context);
+
+      holder = new ViewHolder();
+      holder.authorTextView = (TextView) view.findViewById(FeedbackMessageView.AUTHOR_TEXT_VIEW_ID);
+      holder.dateTextView = (TextView) view.findViewById(FeedbackMessageView.DATE_TEXT_VIEW_ID);
+      holder.messageTextView = (TextView) view.findViewById(FeedbackMessageView.MESSAGE_TEXT_VIEW_ID);
+      holder.attachmentListView = (AttachmentListView) view.findViewById(FeedbackMessageView.ATTACHMENT_LIST_VIEW_ID);
+      view.setTag(holder);
     } 
     else {
       view = (FeedbackMessageView) convertView;
+      holder = (ViewHolder) view.getTag();
     }
   
     if (feedbackMessage != null) {
-      authorTextView = (TextView) view.findViewById(FeedbackMessageView.AUTHOR_TEXT_VIEW_ID);
-      dateTextView = (TextView) view.findViewById(FeedbackMessageView.DATE_TEXT_VIEW_ID);
-      messageTextView = (TextView) view.findViewById(FeedbackMessageView.MESSAGE_TEXT_VIEW_ID);
-      attachmentListView = (AttachmentListView) view.findViewById(FeedbackMessageView.ATTACHMENT_LIST_VIEW_ID);
-
-      try {
-        date = format.parse(feedbackMessage.getCreatedAt());
-        dateTextView.setText(formatNew.format(date));
-      } catch (ParseException e) {
-        e.printStackTrace();
-      }
-  
-      authorTextView.setText(feedbackMessage.getName());
-      messageTextView.setText(feedbackMessage.getText());
-
-      attachmentListView.removeAllViews();
-      for (FeedbackAttachment feedbackAttachment : feedbackMessage.getFeedbackAttachments()) {
-        AttachmentView attachmentView = new AttachmentView(context, attachmentListView, feedbackAttachment, false);
-        AttachmentDownloader.getInstance().download(feedbackAttachment, attachmentView);
-        attachmentListView.addView(attachmentView);
-      }
+      String displayDate = feedbackMessage.getDisplayDate();
+      holder.dateTextView.setText(displayDate != null ? displayDate : "");
+      holder.authorTextView.setText(feedbackMessage.getName());
+      holder.messageTextView.setText(feedbackMessage.getText());
+
+      bindAttachments(holder.attachmentListView, feedbackMessage);
     }
 
     view.setFeedbackMessageViewBgAndTextColor(position % 2 == 0 ? 0 : 1);
@@ -109,6 +107,41 @@ public class MessagesAdapter extends BaseAdapter {
     return view;
   }
 
+  /**
+   * Shows the attachments of the message in the list. The attachment views
+   * of the previous message are put back into the pool and reused.
+   */
+  private void bindAttachments(AttachmentListView attachmentListView, FeedbackMessage feedbackMessage) {
+    for (int i = 0; i < attachmentListView.getChildCount(); i++) {
+      View child = attachmentListView.getChildAt(i);
+      if (child instanceof AttachmentView) {
+        // The pending download must not set its image on the reused view
+        AttachmentDownloader.getInstance().cancel((AttachmentView) child);
+        if (attachmentViewPool.size() < MAX_POOLED_ATTACHMENT_VIEWS) {
+          attachmentViewPool.add((AttachmentView) child);
+        }
+      }
+    }
+    attachmentListView.removeAllViews();
+
+    if (feedbackMessage.getFeedbackAttachments() == null) {
+      return;
+    }
+
+    for (FeedbackAttachment feedbackAttachment : feedbackMessage.getFeedbackAttachments()) {
+      AttachmentView attachmentView;
+      if (attachmentViewPool.isEmpty()) {
+        attachmentView = new AttachmentView(context, attachmentListView, feedbackAttachment, false);
+      }
+      else {
+        attachmentView = attachmentViewPool.remove(attachmentViewPool.size() - 1);
+        attachmentView.setAttachment(feedbackAttachment);
+      }
+      AttachmentDownloader.getInstance().download(feedbackAttachment, attachmentView);
+      attachmentListView.addView(attachmentView);
+    }
+  }
+
   @Override
   public Object getItem(int position) {
     return messagesList.get(position);
@@ -0,0 +1,176 @@
+package net.hockeyapp.android.objects;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Immutable model for an entry of the version feed. Values are read from
+ * the JSON entry once, so repeated checks don't go through JSONObject.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class AppVersion {
+  /**
+   * Orders versions from the newest to the oldest, first by version code
+   * and then by timestamp.
+   */
+  public static final Comparator<AppVersion> NEWEST_FIRST = new Comparator<AppVersion>() {
+    public int compare(AppVersion version1, AppVersion version2) {
+      if (version1.versionCode != version2.versionCode) {
+        return (version1.versionCode > version2.versionCode ? -1 : 1);
+      }
+      if (version1.timestamp != version2.timestamp) {
+        return (version1.timestamp > version2.timestamp ? -1 : 1);
+      }
+      return 0;
+    }
+  };
+
+  private final String id;
+  private final int versionCode;
+  private final String shortVersion;
+  private final String minimumOSVersion;
+  private final String notes;
+  private final long timestamp;
+  private final boolean hasTimestamp;
+  private final long appSize;
+  private final boolean external;
+  private final boolean mandatory;
+  private final boolean hasMandatory;
+
+  private AppVersion(JSONObject entry) throws JSONException {
+    this.versionCode = entry.getInt("version");
+    this.id = entry.optString("id", "");
+    this.shortVersion = entry.optString("shortversion", "");
+    this.minimumOSVersion = entry.optString("minimum_os_version", null);
+    this.notes = entry.optString("notes", "");
+    this.timestamp = entry.optLong("timestamp", 0L);
+    this.hasTimestamp = ((entry.has("timestamp")) && (!Double.isNaN(entry.optDouble("timestamp"))));
+    this.appSize = entry.optLong("appsize", 0L);
+    this.external = Boolean.valueOf(entry.optString("external", "false"));
+    this.hasMandatory = entry.has("mandatory");
+    this.mandatory = entry.optBoolean("mandatory", false);
+  }
+
+  /**
+   * Creates a version from an entry of the version feed.
+   *
+   * @param entry JSON object of the entry
+   * @return the version
+   * @throws JSONException if the entry has no version code
+   */
+  public static AppVersion fromJSON(JSONObject entry) throws JSONException {
+    return new AppVersion(entry);
+  }
+
+  /**
+   * Creates the versions of a version feed. Invalid entries are skipped.
+   *
+   * @param versions JSON array of the feed
+   * @return list of versions in the order of the feed
+   */
+  public static List<AppVersion> fromJSON(JSONArray versions) {
+    List<AppVersion> result = new ArrayList<AppVersion>(versions.length());
+    for (int index = 0; index < versions.length(); index++) {
+      try {
+        result.add(new AppVersion(versions.getJSONObject(index)));
+      }
+      catch (JSONException e) {
+      }
+    }
+    return result;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public int getVersionCode() {
+    return versionCode;
+  }
+
+  public String getShortVersion() {
+    return shortVersion;
+  }
+
+  /**
+   * Returns the minimum OS version or null if the entry has none.
+   *
+   * @return the minimum OS version
+   */
+  public String getMinimumOSVersion() {
+    return minimumOSVersion;
+  }
+
+  public String getNotes() {
+    return notes;
+  }
+
+  /**
+   * Returns the Unix-style timestamp of the build.
+   *
+   * @return timestamp in seconds
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns true if the entry has a numeric timestamp. Otherwise
+   * {@link #getTimestamp()} returns 0.
+   *
+   * @return true if the timestamp is known
+   */
+  public boolean hasTimestamp() {
+    return hasTimestamp;
+  }
+
+  public long getAppSize() {
+    return appSize;
+  }
+
+  public boolean isExternal() {
+    return external;
+  }
+
+  public boolean isMandatory() {
+    return mandatory;
+  }
+
+  public boolean hasMandatory() {
+    return hasMandatory;
+  }
+}
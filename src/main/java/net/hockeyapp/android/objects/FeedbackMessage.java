@@ -54,6 +54,8 @@ public class FeedbackMessage implements Serializable {
   private String name;
   private String appId;
   private List<FeedbackAttachment> feedbackAttachments;
+  /** Depends on the locale and time zone, so it is formatted again after loading */
+  private transient String displayDate;
   
   public String getSubjec() {
     return subject;
@@ -162,4 +164,16 @@ public class FeedbackMessage implements Serializable {
   public List<FeedbackAttachment> getFeedbackAttachments() { return feedbackAttachments; }
 
   public void setFeedbackAttachments(List<FeedbackAttachment> feedbackAttachments) { this.feedbackAttachments = feedbackAttachments; }
+
+  /**
+   * @return the creation date formatted for display, set by the parser
+   *         or when the message is loaded from the store
+   */
+  public String getDisplayDate() {
+    return displayDate;
+  }
+
+  public void setDisplayDate(String displayDate) {
+    this.displayDate = displayDate;
+  }
 }
@@ -1,28 +1,38 @@
 package net.hockeyapp.android.tasks;
 
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.util.Log;
 import net.hockeyapp.android.Constants;
 import net.hockeyapp.android.objects.FeedbackAttachment;
-import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.ConnectionManager;
 import net.hockeyapp.android.utils.ImageUtils;
+import net.hockeyapp.android.utils.NetworkScheduler;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import net.hockeyapp.android.utils.ThumbnailCache;
+import net.hockeyapp.android.utils.ThumbnailCache.Thumbnail;
+import net.hockeyapp.android.utils.TransferUtils;
 import net.hockeyapp.android.views.AttachmentView;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <h3>Description</h3>
  * 
- * Singleton class to queue attachment downloads.
+ * Singleton class to queue attachment downloads. A few downloads run at
+ * the same time, attachments whose views are on screen are loaded first.
+ * Requests for the same attachment share one download, jobs whose views
+ * were detached are dropped before they start. Failed downloads are
+ * retried with an exponential backoff. Must be used from the UI thread.
  * 
  * <h3>License</h3>
  * 
@@ -55,6 +65,21 @@ import java.util.Queue;
  */
 public class AttachmentDownloader {
 
+  /**
+   * Maximum number of downloads which run at the same time.
+   */
+  private static final int MAX_CONCURRENT_DOWNLOADS = 3;
+
+  /**
+   * Maximum number of retries of a failed download.
+   */
+  private static final int MAX_RETRIES = 3;
+
+  /**
+   * Delay before the first retry, doubled for each further retry.
+   */
+  private static final long INITIAL_RETRY_DELAY = 1000;
+
   /**
    * AttachmentDownloaderHolder is loaded on the first execution of AttachmentDownloader.getInstance()
    * or the first access to FeedbackParserHolder.INSTANCE, not before.
@@ -67,46 +92,170 @@ public class AttachmentDownloader {
     return AttachmentDownloaderHolder.INSTANCE;
   }
 
-  private Queue<DownloadJob> queue;
+  /**
+   * All jobs by the cache id of their attachment, guarded by this.
+   */
+  private final Map<String, DownloadJob> jobs;
+
+  private final Handler handler;
 
-  private boolean downloadRunning;
+  private int runningWorkers;
+
+  private long sequence;
 
   private AttachmentDownloader() {
-    this.queue = new LinkedList<DownloadJob>();
-    this.downloadRunning = false;
+    this.jobs = new HashMap<String, DownloadJob>();
+    this.handler = new Handler(Looper.getMainLooper());
+    this.runningWorkers = 0;
+    this.sequence = 0;
   }
 
+  /**
+   * Queues the download of the attachment's thumbnail for the view. The
+   * download which was requested last runs first, so calling this again
+   * when the view is shown moves it to the front of the queue.
+   *
+   * @param feedbackAttachment the attachment
+   * @param attachmentView the view which shows the thumbnail
+   */
   public void download(FeedbackAttachment feedbackAttachment, AttachmentView attachmentView) {
-    queue.add(new DownloadJob(feedbackAttachment, attachmentView));
-    downloadNext();
+    Thumbnail thumbnail = ThumbnailCache.getInstance().getFromMemory(getThumbnailKey(feedbackAttachment, attachmentView));
+    if (thumbnail != null) {
+      // Shown before, no need to touch the disk
+      cancel(attachmentView);
+      attachmentView.setImage(thumbnail.getBitmap(), thumbnail.getOrientation());
+      return;
+    }
+
+    synchronized (this) {
+      String cacheId = feedbackAttachment.getCacheId();
+      DownloadJob job = jobs.get(cacheId);
+      if (job == null) {
+        job = new DownloadJob(feedbackAttachment);
+        jobs.put(cacheId, job);
+      }
+      job.addView(attachmentView);
+      job.setSequence(++sequence);
+    }
+    startWorkers();
   }
 
-  private void downloadNext() {
-    if (downloadRunning) {
+  /**
+   * Removes the view from its download, called when the view is detached
+   * or recycled. A download without views is dropped unless it already
+   * runs, a running download is finished for the cache.
+   *
+   * @param attachmentView the view of the attachment
+   */
+  public synchronized void cancel(AttachmentView attachmentView) {
+    DownloadJob job = findJob(attachmentView);
+    if (job == null) {
       return;
     }
 
-    DownloadJob downloadJob = queue.peek();
-    if (downloadJob != null) {
-      DownloadTask downloadTask = new DownloadTask(downloadJob, new Handler() {
-        @Override
-        public void handleMessage(Message msg) {
-          final DownloadJob retryCandidate = queue.poll();
-          if (!retryCandidate.isSuccess() && retryCandidate.consumeRetry()) {
-            this.postDelayed(new Runnable() {
-              @Override
-              public void run() {
-                queue.add(retryCandidate);
-                downloadNext();
-              }
-            }, 3000);
-          }
-          downloadRunning = false;
-          downloadNext();
+    job.removeView(attachmentView);
+    if ((!job.hasViews()) && (!job.isRunning())) {
+      jobs.remove(job.getFeedbackAttachment().getCacheId());
+    }
+  }
+
+  private static String getThumbnailKey(FeedbackAttachment feedbackAttachment, AttachmentView attachmentView) {
+    return ThumbnailCache.getKey(feedbackAttachment.getCacheId(), attachmentView.getWidthPortrait(), attachmentView.getMaxHeightPortrait(),
+        attachmentView.getWidthLandscape(), attachmentView.getMaxHeightLandscape());
+  }
+
+  private DownloadJob findJob(AttachmentView attachmentView) {
+    FeedbackAttachment attachment = attachmentView.getAttachment();
+    if (attachment == null) {
+      return null;
+    }
+
+    DownloadJob job = jobs.get(attachment.getCacheId());
+    return (((job != null) && (job.hasView(attachmentView))) ? job : null);
+  }
+
+  private void startWorkers() {
+    synchronized (this) {
+      int pending = 0;
+      for (DownloadJob job : jobs.values()) {
+        if (job.isPending()) {
+          pending++;
         }
-      });
-      downloadRunning = true;
-      AsyncTaskUtils.execute(downloadTask);
+      }
+
+      int count = Math.min(pending, MAX_CONCURRENT_DOWNLOADS - runningWorkers);
+      for (int i = 0; i < count; i++) {
+        runningWorkers++;
+        NetworkScheduler.execute(new DownloadWorker(), Priority.ATTACHMENT);
+      }
+    }
+  }
+
+  /**
+   * Returns the pending job which was requested or shown last and marks it
+   * as running.
+   */
+  private synchronized DownloadJob takeNextJob() {
+    DownloadJob next = null;
+    for (DownloadJob job : jobs.values()) {
+      if ((job.isPending()) && ((next == null) || (job.getSequence() > next.getSequence()))) {
+        next = job;
+      }
+    }
+
+    if (next != null) {
+      next.setRunning(true);
+    }
+    return next;
+  }
+
+  /**
+   * Called when a worker finished its job. The next job gets its own worker,
+   * so it is queued behind more urgent work of the network scheduler.
+   */
+  private void onWorkerFinished() {
+    synchronized (this) {
+      runningWorkers--;
+    }
+    startWorkers();
+  }
+
+  private synchronized List<AttachmentView> getViews(DownloadJob job) {
+    return job.getViews();
+  }
+
+  /**
+   * Called on the UI thread when a download finished.
+   */
+  private void onFinished(final DownloadJob job, boolean success, Bitmap bitmap, int bitmapOrientation) {
+    List<AttachmentView> views;
+    synchronized (this) {
+      job.setRunning(false);
+      views = job.getViews();
+
+      if ((!success) && (!views.isEmpty()) && (job.consumeRetry())) {
+        long delay = INITIAL_RETRY_DELAY << (job.getRetries() - 1);
+        job.setWaiting(true);
+        handler.postDelayed(new Runnable() {
+          @Override
+          public void run() {
+            job.setWaiting(false);
+            startWorkers();
+          }
+        }, delay);
+        return;
+      }
+
+      jobs.remove(job.getFeedbackAttachment().getCacheId());
+    }
+
+    for (AttachmentView attachmentView : views) {
+      if (success) {
+        attachmentView.setImage(bitmap, bitmapOrientation);
+      }
+      else {
+        attachmentView.signalImageLoadingError();
+      }
     }
   }
 
@@ -116,172 +265,171 @@ public class AttachmentDownloader {
   private static class DownloadJob {
 
     private final FeedbackAttachment feedbackAttachment;
-    private final AttachmentView attachmentView;
-    private boolean success;
-    private int remainingRetries;
+    private final List<AttachmentView> attachmentViews;
+    private long sequence;
+    private boolean running;
+    private boolean waiting;
+    private int retries;
 
-    private DownloadJob(FeedbackAttachment feedbackAttachment, AttachmentView attachmentView) {
+    private DownloadJob(FeedbackAttachment feedbackAttachment) {
       this.feedbackAttachment = feedbackAttachment;
-      this.attachmentView = attachmentView;
-      this.success = false;
-      this.remainingRetries = 2;
+      this.attachmentViews = new ArrayList<AttachmentView>();
+      this.running = false;
+      this.waiting = false;
+      this.retries = 0;
     }
 
     public FeedbackAttachment getFeedbackAttachment() {
       return feedbackAttachment;
     }
 
-    public AttachmentView getAttachmentView() {
-      return attachmentView;
+    public void addView(AttachmentView attachmentView) {
+      if (!attachmentViews.contains(attachmentView)) {
+        attachmentViews.add(attachmentView);
+      }
     }
 
-    public boolean isSuccess() { return success; }
-
-    public void setSuccess(boolean success) { this.success = success; }
+    public void removeView(AttachmentView attachmentView) {
+      attachmentViews.remove(attachmentView);
+    }
 
-    public boolean hasRetry() {
-      return remainingRetries > 0;
+    public boolean hasView(AttachmentView attachmentView) {
+      return attachmentViews.contains(attachmentView);
     }
 
-    public boolean consumeRetry() {
-      return --remainingRetries < 0 ? false : true;
+    public boolean hasViews() {
+      return !attachmentViews.isEmpty();
     }
-  }
 
-  /**
-   * The AsyncTask that downloads the image and the updates the view.
-   */
-  private static class DownloadTask extends AsyncTask<Void, Integer, Boolean> {
+    /**
+     * Returns a copy of the views which wait for the download.
+     */
+    public List<AttachmentView> getViews() {
+      return new ArrayList<AttachmentView>(attachmentViews);
+    }
 
-    private final DownloadJob downloadJob;
+    public long getSequence() { return sequence; }
 
-    private final Handler handler;
+    public void setSequence(long sequence) { this.sequence = sequence; }
 
-    private File dropFolder;
+    public boolean isRunning() { return running; }
 
-    private Bitmap bitmap;
+    public void setRunning(boolean running) { this.running = running; }
 
-    private int bitmapOrientation;
+    public void setWaiting(boolean waiting) { this.waiting = waiting; }
 
-    public DownloadTask(DownloadJob downloadJob, Handler handler) {
-      this.downloadJob = downloadJob;
-      this.handler = handler;
-      this.dropFolder = Constants.getHockeyAppStorageDir();
-      this.bitmap = null;
-      this.bitmapOrientation = ImageUtils.ORIENTATION_PORTRAIT; // default
+    public boolean isPending() {
+      return ((!running) && (!waiting) && (!attachmentViews.isEmpty()));
     }
 
-    @Override
-    protected void onPreExecute() {
-    }
+    public int getRetries() { return retries; }
 
-    @Override
-    protected Boolean doInBackground(Void... args) {
-      FeedbackAttachment attachment = downloadJob.getFeedbackAttachment();
-
-      if (attachment.isAvailableInCache()) {
-        Log.e(Constants.TAG, "Cached...");
-        loadImageThumbnail();
-        return true;
-
-      } else {
-        Log.e(Constants.TAG, "Downloading...");
-        boolean success = downloadAttachment(attachment.getUrl(), attachment.getCacheId());
-        if (success) {
-          loadImageThumbnail();
-        }
-        return success;
+    public boolean consumeRetry() {
+      if (retries >= MAX_RETRIES) {
+        return false;
       }
+      retries++;
+      return true;
     }
+  }
 
-    @Override
-    protected void onProgressUpdate(Integer... values) {
-    }
+  /**
+   * Downloads one image and updates its views. A worker only handles one
+   * job, so downloads don't keep the threads of the network scheduler from
+   * more urgent work, e.g. sending feedback.
+   */
+  private class DownloadWorker implements Runnable {
 
-    @Override
-    protected void onPostExecute(Boolean success) {
-      AttachmentView attachmentView = downloadJob.getAttachmentView();
-      downloadJob.setSuccess(success);
+    private final File dropFolder;
 
-      if (success) {
-        attachmentView.setImage(bitmap, bitmapOrientation);
+    public DownloadWorker() {
+      this.dropFolder = Constants.getHockeyAppStorageDir();
+    }
 
-      } else {
-        if (!downloadJob.hasRetry()) {
-          attachmentView.signalImageLoadingError();
+    @Override
+    public void run() {
+      try {
+        DownloadJob job = takeNextJob();
+        if (job != null) {
+          download(job);
         }
       }
-
-      handler.sendEmptyMessage(0);
+      finally {
+        onWorkerFinished();
+      }
     }
 
-    private void loadImageThumbnail() {
-      try {
-        String filename = downloadJob.getFeedbackAttachment().getCacheId();
-        AttachmentView attachmentView = downloadJob.getAttachmentView();
+    private void download(final DownloadJob job) {
+      FeedbackAttachment attachment = job.getFeedbackAttachment();
+      List<AttachmentView> views = getViews(job);
 
-        bitmapOrientation = ImageUtils.determineOrientation(new File(dropFolder, filename));
-        int width  = bitmapOrientation == ImageUtils.ORIENTATION_LANDSCAPE ?
-            attachmentView.getWidthLandscape() : attachmentView.getWidthPortrait();
-        int height = bitmapOrientation == ImageUtils.ORIENTATION_LANDSCAPE ?
-            attachmentView.getMaxHeightLandscape() : attachmentView.getMaxHeightPortrait();
-
-        bitmap = ImageUtils.decodeSampledBitmap(new File(dropFolder, filename), width, height);
+      boolean success;
+      File file = new File(dropFolder, attachment.getCacheId());
+      if (file.exists()) {
+        Log.d(Constants.TAG, "Cached...");
+        success = true;
+      }
+      else {
+        Log.d(Constants.TAG, "Downloading...");
+        success = downloadAttachment(attachment.getUrl(), attachment.getCacheId());
+      }
 
-      } catch(IOException e) {
-        e.printStackTrace();
-        bitmap = null;
+      Bitmap bitmap = null;
+      int bitmapOrientation = ImageUtils.ORIENTATION_PORTRAIT;
+      if ((success) && (!views.isEmpty())) {
+        try {
+          AttachmentView attachmentView = views.get(0);
+          Thumbnail thumbnail = ThumbnailCache.getInstance().load(file, getThumbnailKey(attachment, attachmentView),
+              attachmentView.getWidthPortrait(), attachmentView.getMaxHeightPortrait(),
+              attachmentView.getWidthLandscape(), attachmentView.getMaxHeightLandscape());
+          if (thumbnail != null) {
+            bitmap = thumbnail.getBitmap();
+            bitmapOrientation = thumbnail.getOrientation();
+          }
+        }
+        catch (IOException e) {
+          e.printStackTrace();
+        }
       }
+
+      final boolean finalSuccess = success;
+      final Bitmap finalBitmap = bitmap;
+      final int finalOrientation = bitmapOrientation;
+      handler.post(new Runnable() {
+        @Override
+        public void run() {
+          onFinished(job, finalSuccess, finalBitmap, finalOrientation);
+        }
+      });
     }
 
     private boolean downloadAttachment(String urlString, String filename) {
+      File tempFile = new File(dropFolder, filename + ".tmp");
       try {
-        URL url = new URL(urlString);
-        URLConnection connection = createConnection(url);
-        connection.connect();
-
-        int lengthOfFile = connection.getContentLength();
-        String status = connection.getHeaderField("Status");
-
-        if (status != null) {
-          if (!status.startsWith("200")) {
-            return false;
-          }
+        HttpResponse response = ConnectionManager.getInstance().execute(new HttpGet(urlString));
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+          return false;
         }
 
-        File file = new File(dropFolder, filename);
-        InputStream input = new BufferedInputStream(connection.getInputStream());
-        OutputStream output = new FileOutputStream(file);
-
-        byte data[] = new byte[1024];
-        int count = 0;
-        long total = 0;
-        while ((count = input.read(data)) != -1) {
-          total += count;
-          publishProgress((int)(total * 100 / lengthOfFile));
-          output.write(data, 0, count);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+          entity.consumeContent();
+          return false;
         }
 
-        output.flush();
-        output.close();
-        input.close();
-        return (total > 0);
+        long lengthOfFile = entity.getContentLength();
+
+        // Download to a temporary file, so an interrupted download isn't taken for a cached file
+        long total = TransferUtils.copyToFile(entity.getContent(), tempFile, lengthOfFile, null);
+        return ((total > 0) && (tempFile.renameTo(new File(dropFolder, filename))));
 
       } catch (Exception e) {
         e.printStackTrace();
         return false;
-      }
-    }
 
-    private URLConnection createConnection(URL url) throws IOException {
-      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-      connection.addRequestProperty("User-Agent", "HockeySDK/Android");
-      connection.setInstanceFollowRedirects(true);
-      /* connection bug workaround for SDK<=2.x */
-      if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-        connection.setRequestProperty("connection", "close");
+      } finally {
+        tempFile.delete();
       }
-      return connection;
     }
   }
 }
@@ -1,24 +1,36 @@
 package net.hockeyapp.android.tasks;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Build;
-import android.provider.Settings;
+import android.util.JsonReader;
+import net.hockeyapp.android.AppInfo;
 import net.hockeyapp.android.Constants;
 import net.hockeyapp.android.Tracking;
 import net.hockeyapp.android.UpdateManagerListener;
+import net.hockeyapp.android.objects.AppVersion;
+import net.hockeyapp.android.utils.ConnectionManager;
+import net.hockeyapp.android.utils.JSONReaderUtils;
+import net.hockeyapp.android.utils.UpdateCheckScheduler;
 import net.hockeyapp.android.utils.VersionCache;
 import net.hockeyapp.android.utils.VersionHelper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
 import java.lang.ref.WeakReference;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * <h3>Description</h3>
@@ -58,6 +70,11 @@ import java.util.Locale;
 public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
   private static final int MAX_NUMBER_OF_VERSIONS = 25;
 
+  /**
+   * Keys needed to check an entry which is not kept in the result.
+   */
+  private static final Set<String> VERSION_CHECK_KEYS = new HashSet<String>(Arrays.asList("version", "timestamp", "minimum_os_version", "mandatory"));
+
 	protected static final String APK = "apk";
 	protected static final String INTENT_EXTRA_URL = "url";
 	protected static final String INTENT_EXTRA_JSON = "json";
@@ -69,6 +86,8 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
   protected Boolean mandatory = false;
   protected UpdateManagerListener listener;
   private long usageTime = 0;
+  private boolean checked = false;
+  private final String feed;
   
   public CheckUpdateTask(WeakReference<? extends Context> weakContext, String urlString) {
    this(weakContext, urlString, null);
@@ -82,6 +101,7 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
     this.appIdentifier = appIdentifier;
     this.urlString = urlString;
     this.listener = listener;
+    this.feed = urlString + "|" + appIdentifier;
 
     Context ctx = null;
     if (weakContext != null) {
@@ -117,58 +137,162 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
   
   @Override
   protected JSONArray doInBackground(Void... args) {
+    boolean requested = false;
     try {
       int versionCode = getVersionCode();
       
       JSONArray json = new JSONArray(VersionCache.getVersionInfo(context));
       if ((getCachingEnabled()) && (findNewVersion(json, versionCode))) {
+        checked = true;
         return json;
       }
-      
-      URL url = new URL(getURLString("json"));
-      URLConnection connection = createConnection(url);
-      connection.connect();
 
-      InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-      String jsonString = convertStreamToString(inputStream);
-      inputStream.close();
+      if ((getSchedulingEnabled()) && (!UpdateCheckScheduler.isCheckDue(context))) {
+        // The last check is still fresh and the cache had no new version
+        return null;
+      }
       
-      json = new JSONArray(jsonString);
-      if (findNewVersion(json, versionCode)) {
-        json = limitResponseSize(json);
-        return json;
+      HttpGet request = new HttpGet(getURLString("json"));
+
+      // If the feed didn't change, the saved copy is evaluated again, as the
+      // result also depends on the device, e.g. its OS version
+      String eTag = (getCachingEnabled() ? VersionCache.getETag(context) : null);
+      if (eTag != null) {
+        request.setHeader("If-None-Match", eTag);
+      }
+      requested = true;
+      HttpResponse response = ConnectionManager.getInstance().execute(request);
+
+      int status = response.getStatusLine().getStatusCode();
+      boolean notModified = (status == HttpStatus.SC_NOT_MODIFIED);
+      if ((!notModified) && (status != HttpStatus.SC_OK)) {
+        consume(response);
+        throw new IOException("Unexpected status code: " + status);
       }
+
+      json = readFeed(response, notModified, versionCode);
+      if (getSchedulingEnabled()) {
+        if (getCachingEnabled()) {
+          VersionCache.setVersionInfo(context, (json != null ? json.toString() : "[]"));
+        }
+        long maxAge = UpdateCheckScheduler.parseMaxAge(getHeader(response, "Cache-Control"));
+        UpdateCheckScheduler.checkFinished(context, getCheckInterval(), maxAge);
+      }
+      consume(response);
+      checked = true;
+      return json;
     }
     catch (Exception e) {
       e.printStackTrace();
+
+      if ((requested) && (getSchedulingEnabled())) {
+        // Don't ask the server again right away
+        UpdateCheckScheduler.checkFailed(context, getCheckInterval());
+      }
     }
     
     return null;
   }
 
-  protected URLConnection createConnection(URL url) throws IOException {
-    URLConnection connection = url.openConnection();
-    connection.addRequestProperty("User-Agent", "HockeySDK/Android");
-    // connection bug workaround for SDK<=2.x
-    if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-      connection.setRequestProperty("connection", "close");
+  private static String getHeader(HttpResponse response, String name) {
+    Header header = response.getFirstHeader(name);
+    return (header != null ? header.getValue() : null);
+  }
+
+  private static void consume(HttpResponse response) throws IOException {
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      entity.consumeContent();
     }
-    return connection;
   }
 
-  private boolean findNewVersion(JSONArray json, int versionCode) {
+  /**
+   * Returns the new versions from the response or, if the server answered
+   * with 304 Not Modified, from the saved copy of the feed. If caching is
+   * enabled and the server sent an ETag, the feed is saved first.
+   */
+  private JSONArray readFeed(HttpResponse response, boolean notModified, int versionCode) throws IOException, JSONException {
+    InputStream feed;
+    if (notModified) {
+      consume(response);
+      feed = VersionCache.openFeed(context);
+      if (feed == null) {
+        throw new IOException("Saved feed is missing");
+      }
+    }
+    else {
+      String eTag = getHeader(response, "ETag");
+      if ((getCachingEnabled()) && (eTag != null)) {
+        VersionCache.setFeed(context, response.getEntity().getContent(), eTag);
+        feed = VersionCache.openFeed(context);
+        if (feed == null) {
+          throw new IOException("Saved feed is missing");
+        }
+      }
+      else {
+        VersionCache.clearFeed(context);
+        feed = response.getEntity().getContent();
+      }
+    }
+    return readNewVersions(feed, versionCode);
+  }
+
+  private JSONArray readNewVersions(InputStream feed, int versionCode) throws IOException, JSONException {
+    // Closing the stream reads the rest of the feed, so the connection can be reused
+    InputStream inputStream = new BufferedInputStream(feed);
     try {
-      for (int index = 0; index < json.length(); index++) {
-        JSONObject entry = json.getJSONObject(index);
+      if (JSONReaderUtils.isSupported()) {
+        return streamNewVersions(inputStream, versionCode);
+      }
+
+      String jsonString = convertStreamToString(inputStream);
+      JSONArray json = new JSONArray(jsonString);
+      if (findNewVersion(json, versionCode)) {
+        return limitResponseSize(json);
+      }
+      return null;
+    }
+    finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Reads the version feed entry by entry. Only the first MAX_NUMBER_OF_VERSIONS
+   * entries are kept, later entries are only read until a new version was found.
+   * The remaining feed is not read at all once both conditions are met.
+   *
+   * @return the first entries of the feed if a new version is available, null otherwise
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private JSONArray streamNewVersions(InputStream inputStream, int versionCode) throws IOException, JSONException {
+    JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+    JSONArray result = new JSONArray();
+    boolean found = false;
+
+    reader.beginArray();
+    while ((reader.hasNext()) && ((!found) || (result.length() < MAX_NUMBER_OF_VERSIONS))) {
+      JSONObject entry;
+      if (result.length() < MAX_NUMBER_OF_VERSIONS) {
+        entry = JSONReaderUtils.readObject(reader);
+        result.put(entry);
+      }
+      else {
+        entry = JSONReaderUtils.readObject(reader, VERSION_CHECK_KEYS);
+      }
+
+      if ((!found) && (isNewVersion(entry, versionCode))) {
+        found = true;
+      }
+    }
 
-        boolean largerVersionCode = (entry.getInt("version") > versionCode);
-        boolean newerApkFile = ((entry.getInt("version") == versionCode) && VersionHelper.isNewerThanLastUpdateTime(context, entry.getLong("timestamp")));
-        boolean minRequirementsMet = VersionHelper.compareVersionStrings(entry.getString("minimum_os_version"), VersionHelper.mapGoogleVersion(Build.VERSION.RELEASE)) <= 0;
+    return (found ? result : null);
+  }
 
-        if ((largerVersionCode || newerApkFile) && minRequirementsMet) {
-          if (entry.has("mandatory")) {
-            mandatory = entry.getBoolean("mandatory");
-          }
+  private boolean findNewVersion(JSONArray json, int versionCode) {
+    try {
+      for (int index = 0; index < json.length(); index++) {
+        if (isNewVersion(json.getJSONObject(index), versionCode)) {
           return true;
         }
       }
@@ -180,6 +304,31 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
     }
   }
 
+  private boolean isNewVersion(JSONObject entry, int versionCode) throws JSONException {
+    AppVersion version = AppVersion.fromJSON(entry);
+
+    // An entry without minimum OS version, or without timestamp for the same version code, ends the check as before
+    if (version.getMinimumOSVersion() == null) {
+      throw new JSONException("No value for minimum_os_version");
+    }
+    if ((version.getVersionCode() == versionCode) && (!version.hasTimestamp())) {
+      throw new JSONException("No value for timestamp");
+    }
+
+    boolean largerVersionCode = (version.getVersionCode() > versionCode);
+    boolean newerApkFile = ((version.getVersionCode() == versionCode) && VersionHelper.isNewerThanLastUpdateTime(context, version.getTimestamp()));
+    boolean minRequirementsMet = VersionHelper.compareVersionStrings(version.getMinimumOSVersion(), VersionHelper.mapGoogleVersion(Build.VERSION.RELEASE)) <= 0;
+
+    if ((largerVersionCode || newerApkFile) && minRequirementsMet) {
+      if (version.hasMandatory()) {
+        mandatory = version.isMandatory();
+      }
+      return true;
+    }
+
+    return false;
+  }
+
   private JSONArray limitResponseSize(JSONArray json) {
     JSONArray result = new JSONArray();
     for (int index = 0; index < Math.min(json.length(), MAX_NUMBER_OF_VERSIONS); index++) {
@@ -204,6 +353,46 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
         listener.onNoUpdateAvailable();
       }
     }
+
+    UpdateCheckCoordinator.onFinished(this, updateInfo);
+  }
+
+  @Override
+  protected void onCancelled() {
+    UpdateCheckCoordinator.onFinished(this, null);
+  }
+
+  /**
+   * Delivers the result of another task for the same app, so this task
+   * notifies its listener without checking again.
+   *
+   * @param updateInfo new versions or null if there is no update
+   * @param mandatory true if one of the new versions is mandatory
+   */
+  public void deliver(JSONArray updateInfo, boolean mandatory) {
+    this.mandatory = mandatory;
+    onPostExecute(updateInfo);
+  }
+
+  /**
+   * Returns true if the result of this task is known to be current, i.e.
+   * the server was asked or the cache already had a new version. Returns
+   * false if the check was skipped or failed.
+   */
+  boolean isChecked() {
+    return checked;
+  }
+
+  boolean isMandatory() {
+    return mandatory;
+  }
+
+  /**
+   * Returns a key for the server and app which are checked. Tasks with
+   * the same key get the same result.
+   */
+  String getFeed() {
+    return feed;
   }
   
   protected void cleanUp() {
@@ -218,9 +407,10 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
     builder.append((this.appIdentifier != null ? this.appIdentifier : context.getPackageName()));
     builder.append("?format=" + format);
 
-    String deviceIdentifier = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+    AppInfo appInfo = Constants.getAppInfo(context);
+    String deviceIdentifier = (appInfo != null ? appInfo.getDeviceIdentifier() : null);
     if (deviceIdentifier != null) {
-      builder.append("&udid=" + encodeParam(Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID)));
+      builder.append("&udid=" + encodeParam(deviceIdentifier));
     }
     
     builder.append("&os=Android");
@@ -249,6 +439,24 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray>{
   protected boolean getCachingEnabled() {
     return true;
   }
+
+  /**
+   * Returns true if the check should only use the network if the last
+   * check is older than the check interval or the server's max-age.
+   * Otherwise it is answered from the version cache.
+   *
+   * @return true if checks are throttled
+   */
+  protected boolean getSchedulingEnabled() {
+    return true;
+  }
+
+  private long getCheckInterval() {
+    if (listener != null) {
+      return listener.getBackgroundCheckInterval();
+    }
+    return UpdateCheckScheduler.DEFAULT_INTERVAL;
+  }
   
 /*
 MIT Mobile for Android is open source software, created, maintained, and shared under the MIT license by Information Services & Technology at the Massachusetts Institute of Technology. The project includes components from other open source projects which remain under their existing licenses, detailed in their respective source files. The open source license does not apply to media depicting people and places at MIT which are included in the source. Said media may not be duplicated without MIT's consent.
@@ -8,6 +8,8 @@ import net.hockeyapp.android.Strings;
 import net.hockeyapp.android.UpdateActivity;
 import net.hockeyapp.android.UpdateFragment;
 import net.hockeyapp.android.UpdateManagerListener;
+import net.hockeyapp.android.utils.NetworkScheduler;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
 import net.hockeyapp.android.utils.Util;
 import net.hockeyapp.android.utils.VersionCache;
 
@@ -19,6 +21,7 @@ import android.app.AlertDialog;
 import android.app.DialogFragment;
 import android.app.Fragment;
 import android.app.FragmentTransaction;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Build;
@@ -88,6 +91,30 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
     }
   }
 
+  /**
+   * Returns true if the other task shows its dialog in the same activity.
+   */
+  boolean hasSameActivity(CheckUpdateTask other) {
+    return ((activity != null) && (other instanceof CheckUpdateTaskWithUI) && (((CheckUpdateTaskWithUI)other).activity == activity));
+  }
+
+  /**
+   * Only notifies the listener, e.g. because a newer registration for the
+   * same activity shows the dialog.
+   */
+  void suppressDialog() {
+    isDialogRequired = false;
+  }
+
+  @Override
+  protected JSONArray doInBackground(Void... args) {
+    JSONArray updateInfo = super.doInBackground(args);
+    if ((updateInfo != null) && (isDialogRequired) && (getCachingEnabled())) {
+      VersionCache.setVersionInfo(activity, updateInfo.toString());
+    }
+    return updateInfo;
+  }
+
   @Override
   protected void onPostExecute(JSONArray updateInfo) {
     super.onPostExecute(updateInfo);
@@ -96,12 +123,21 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
     }
   }
 
+  /**
+   * Clears the cached version info in the background, so the dialog isn't
+   * shown again for the same update.
+   */
+  private void clearVersionInfo() {
+    final Context context = activity.getApplicationContext();
+    NetworkScheduler.execute(new Runnable() {
+      public void run() {
+        VersionCache.setVersionInfo(context, "[]");
+      }
+    }, Priority.UPDATE_CHECK);
+  }
+
   @TargetApi(Build.VERSION_CODES.HONEYCOMB)
   private void showDialog(final JSONArray updateInfo) {
-    if (getCachingEnabled()) {
-      VersionCache.setVersionInfo(activity, updateInfo.toString());
-    }
-
     if ((activity == null) || (activity.isFinishing())) {
       return;
     }
@@ -121,7 +157,7 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
       builder.setPositiveButton(Strings.get(listener, Strings.UPDATE_DIALOG_POSITIVE_BUTTON_ID), new DialogInterface.OnClickListener() {
         public void onClick(DialogInterface dialog, int which) {
           if (getCachingEnabled()) {
-            VersionCache.setVersionInfo(activity, "[]");
+            clearVersionInfo();
           }
 
           WeakReference<Activity> weakActivity = new WeakReference<Activity>(activity);
@@ -200,6 +236,14 @@ public class CheckUpdateTaskWithUI extends CheckUpdateTask {
     cleanUp();
   }
 
+  /**
+   * Update checks with UI are started by the user and not throttled.
+   */
+  @Override
+  protected boolean getSchedulingEnabled() {
+    return false;
+  }
+
   @Override
   protected void cleanUp() {
     super.cleanUp();
@@ -5,17 +5,28 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Environment;
 import net.hockeyapp.android.Strings;
 import net.hockeyapp.android.listeners.DownloadFileListener;
+import net.hockeyapp.android.objects.AppVersion;
+import net.hockeyapp.android.utils.ConnectionManager;
+import net.hockeyapp.android.utils.TransferUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IllegalFormatException;
 import java.util.UUID;
 
 /**
@@ -55,7 +66,15 @@ import java.util.UUID;
  * @author Thomas Dohmke
  **/
 public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
-  protected static final int MAX_REDIRECTS = 6;
+  /**
+   * Maximum size of downloaded .apk files of other versions which are kept.
+   */
+  protected static final long MAX_CACHE_SIZE = 100 * 1024 * 1024L;
+
+  /**
+   * Suffix of files which are still being downloaded.
+   */
+  private static final String PART_SUFFIX = ".part";
 
   protected Context context;
   protected DownloadFileListener notifier;
@@ -64,14 +83,43 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
   protected String filePath;
   protected ProgressDialog progressDialog;
   private String downloadErrorMessage;
+  private String packageName;
+  private PackageManager packageManager;
+  private int versionCode;
+  private boolean reusable;
 
   public DownloadFileTask(Context context, String urlString, DownloadFileListener notifier) {
+    this(context, urlString, null, notifier);
+  }
+
+  /**
+   * Creates a task to download the given version. The file is named after 
+   * the package, version code and timestamp, so a completed download of the
+   * same build is installed again without downloading it.
+   *
+   * @param context the context to use
+   * @param urlString URL of the .apk file
+   * @param version the version to download or null if unknown
+   * @param notifier listener for the result
+   */
+  public DownloadFileTask(Context context, String urlString, AppVersion version, DownloadFileListener notifier) {
     this.context = context;
     this.urlString = urlString;
-    this.filename = UUID.randomUUID() + ".apk";
     this.filePath = Environment.getExternalStorageDirectory().getAbsolutePath() + "/Download";
     this.notifier = notifier;
     this.downloadErrorMessage = null;
+
+    if ((version != null) && (context != null)) {
+      this.packageName = context.getPackageName();
+      this.packageManager = context.getPackageManager();
+      this.versionCode = version.getVersionCode();
+      this.filename = packageName + "_" + version.getVersionCode() + "_" + version.getTimestamp() + ".apk";
+      this.reusable = true;
+    }
+    else {
+      this.filename = UUID.randomUUID() + ".apk";
+      this.reusable = false;
+    }
   }
 
   public void attach(Context context) {
@@ -86,19 +134,6 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
   @Override
   protected Long doInBackground(Void... args) {
     try {
-      URL url = new URL(getURLString());
-      URLConnection connection = createConnection(url, MAX_REDIRECTS);
-      connection.connect();
-
-      int lengthOfFile = connection.getContentLength();
-      String contentType = connection.getContentType();
-
-      if (contentType != null && contentType.contains("text")) {
-        // This is not the expected APK file. Maybe the redirect could not be resolved.
-        downloadErrorMessage = "The requested download does not appear to be a file.";
-        return 0L;
-      }
-
       File dir = new File(this.filePath);
       boolean result = dir.mkdirs();
       if (!result && !dir.exists()) {
@@ -106,21 +141,55 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
       }
       File file = new File(dir, this.filename);
 
-      InputStream input = new BufferedInputStream(connection.getInputStream());
-      OutputStream output = new FileOutputStream(file);
+      if (reusable) {
+        removeStaleFiles(dir);
+
+        if (isVerified(file)) {
+          // This build was downloaded completely before
+          return file.length();
+        }
+      }
+
+      HttpGet request = new HttpGet(getURLString());
+      // The length is needed for the progress, so the file must not be compressed
+      request.setHeader("Accept-Encoding", "identity");
+      HttpResponse response = ConnectionManager.getInstance().execute(request);
+      HttpEntity entity = response.getEntity();
 
-      byte data[] = new byte[1024];
-      int count;
-      long total = 0;
-      while ((count = input.read(data)) != -1) {
-        total += count;
-        publishProgress(Math.round(total * 100.0f / lengthOfFile));
-        output.write(data, 0, count);
+      int status = response.getStatusLine().getStatusCode();
+      if ((status != HttpStatus.SC_OK) || (entity == null)) {
+        if (entity != null) {
+          entity.consumeContent();
+        }
+        throw new IOException("Unexpected status code: " + status);
       }
 
-      output.flush();
-      output.close();
-      input.close();
+      long lengthOfFile = entity.getContentLength();
+      Header contentType = entity.getContentType();
+
+      if ((contentType != null) && (contentType.getValue().contains("text"))) {
+        // This is not the expected APK file. Maybe the redirect could not be resolved.
+        entity.consumeContent();
+        downloadErrorMessage = "The requested download does not appear to be a file.";
+        return 0L;
+      }
+
+      // Download into a separate file, so only complete files can be reused
+      File partFile = new File(dir, this.filename + PART_SUFFIX);
+      long total = TransferUtils.copyToFile(entity.getContent(), partFile, lengthOfFile, new TransferUtils.TransferListener() {
+        public void onProgress(int percent, long bytesPerSecond, int remainingSeconds) {
+          publishProgress(percent, (int)bytesPerSecond, remainingSeconds);
+        }
+      }, true);
+
+      if ((lengthOfFile > 0) && (total != lengthOfFile)) {
+        partFile.delete();
+        throw new IOException("Download incomplete: " + total + " of " + lengthOfFile + " bytes");
+      }
+      if (!partFile.renameTo(file)) {
+        partFile.delete();
+        throw new IOException("Could not rename the file: " + partFile.getAbsolutePath());
+      }
 
       return total;
     } 
@@ -130,47 +199,63 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
     }
   }
 
-  protected void setConnectionProperties(HttpURLConnection connection) {
-    connection.addRequestProperty("User-Agent", "HockeySDK/Android");
-    connection.setInstanceFollowRedirects(true);
+  /**
+   * Checks that the file is an .apk of the expected version of this app and
+   * signed with the same certificates as the installed app, so a file placed
+   * on the shared external storage by someone else is not installed.
+   */
+  private boolean isVerified(File file) {
+    if ((!file.exists()) || (file.length() == 0)) {
+      return false;
+    }
+
+    PackageInfo packageInfo = packageManager.getPackageArchiveInfo(file.getAbsolutePath(), PackageManager.GET_SIGNATURES);
+    if ((packageInfo == null) || (!packageName.equals(packageInfo.packageName)) || (packageInfo.versionCode != versionCode)) {
+      return false;
+    }
 
-    // connection bug workaround for SDK<=2.x
-    if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-      connection.setRequestProperty("connection", "close");
+    try {
+      PackageInfo installedInfo = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNATURES);
+      return ((packageInfo.signatures != null) && (packageInfo.signatures.length > 0) && (installedInfo.signatures != null) && 
+              (new HashSet<Signature>(Arrays.asList(packageInfo.signatures)).equals(new HashSet<Signature>(Arrays.asList(installedInfo.signatures)))));
+    }
+    catch (PackageManager.NameNotFoundException e) {
+      return false;
     }
   }
 
   /**
-   * Recursive method for resolving redirects. Resolves at most MAX_REDIRECTS times.
-   * 
-   * @param url a URL
-   * @param remainingRedirects loop counter
-   * @throws IOException if connection fails
-   * @return instance of URLConnection
+   * Deletes unfinished downloads and the oldest downloads of other versions 
+   * of this app until their total size is below MAX_CACHE_SIZE.
    */
-  protected URLConnection createConnection(URL url, int remainingRedirects) throws IOException {
-    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-    setConnectionProperties(connection);
-
-    int code = connection.getResponseCode();
-    if (code == HttpURLConnection.HTTP_MOVED_PERM ||
-        code == HttpURLConnection.HTTP_MOVED_TEMP ||
-        code == HttpURLConnection.HTTP_SEE_OTHER) {
+  private void removeStaleFiles(File dir) {
+    final String prefix = packageName + "_";
+    File[] files = dir.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return ((name.startsWith(prefix)) && (name.endsWith(".apk") || name.endsWith(".apk" + PART_SUFFIX)) && (!name.equals(filename)));
+      }
+    });
+    if (files == null) {
+      return;
+    }
 
-      if (remainingRedirects == 0) {
-        // Stop redirecting.
-        return connection;
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File file1, File file2) {
+        long modified1 = file1.lastModified();
+        long modified2 = file2.lastModified();
+        return (modified1 > modified2 ? -1 : (modified1 < modified2 ? 1 : 0));
       }
+    });
 
-      URL movedUrl = new URL(connection.getHeaderField("Location"));
-      if (!url.getProtocol().equals(movedUrl.getProtocol())) {
-        // HttpURLConnection doesn't handle redirects across schemes, so handle it manually, see
-        // http://code.google.com/p/android/issues/detail?id=41651
-        connection.disconnect();
-        return createConnection(movedUrl, --remainingRedirects); // Recursion
+    long size = 0;
+    for (File file : files) {
+      if ((file.getName().endsWith(PART_SUFFIX)) || (size + file.length() > MAX_CACHE_SIZE)) {
+        file.delete();
+      }
+      else {
+        size += file.length();
       }
     }
-    return connection;
   }
 
   @Override
@@ -179,17 +264,45 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
       if (progressDialog == null) {
         progressDialog = new ProgressDialog(context);
         progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-        progressDialog.setMessage("Loading...");
+        progressDialog.setMessage(Strings.get(notifier, Strings.DOWNLOAD_PROGRESS_MESSAGE_ID));
         progressDialog.setCancelable(false);
         progressDialog.show();
       }
-      progressDialog.setProgress(args[0]);
+      if (args[0] >= 0) {
+        progressDialog.setProgress(args[0]);
+      }
+      if (args.length >= 3) {
+        progressDialog.setMessage(getProgressMessage(args[1], args[2]));
+      }
     }
     catch (Exception e) {
       // Ignore all exceptions
     }
   }
 
+  /**
+   * Returns the message for the progress dialog, e.g. "Loading... 1.2 MB/s, 8 s left".
+   *
+   * @param bytesPerSecond average download speed
+   * @param remainingSeconds estimated seconds left or TransferUtils.UNKNOWN
+   * @return message for the progress dialog
+   */
+  protected String getProgressMessage(int bytesPerSecond, int remainingSeconds) {
+    StringBuilder message = new StringBuilder(Strings.get(notifier, Strings.DOWNLOAD_PROGRESS_MESSAGE_ID));
+    try {
+      if (bytesPerSecond > 0) {
+        message.append(" " + String.format(Strings.get(notifier, Strings.DOWNLOAD_PROGRESS_SPEED_ID), bytesPerSecond / (1024.0f * 1024.0f)));
+        if (remainingSeconds != TransferUtils.UNKNOWN) {
+          message.append(", " + String.format(Strings.get(notifier, Strings.DOWNLOAD_PROGRESS_REMAINING_ID), remainingSeconds));
+        }
+      }
+    }
+    catch (IllegalFormatException e) {
+      // Translation with an invalid format, show the message only
+    }
+    return message.toString();
+  }
+
   @Override
   protected void onPostExecute(Long result) {
     if (progressDialog != null) {
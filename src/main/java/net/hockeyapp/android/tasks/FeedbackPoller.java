@@ -0,0 +1,312 @@
+package net.hockeyapp.android.tasks;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import net.hockeyapp.android.utils.PrefsUtil;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Checks for answers to the feedback in the background. The interval
+ * between two checks doubles each time the thread didn't change and
+ * starts again from the minimum when the user sent a message or an
+ * answer arrived. Checks only run while a feedback token exists, only
+ * one check runs at a time and a Retry-After of the server is honoured.
+ * A response which is the same as the last one is not parsed again.
+ * While the device runs on battery, checks are spread further apart.
+ * Polling only runs while the app's process is alive and doesn't wake
+ * the device. Must be used from the UI thread.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class FeedbackPoller {
+  /**
+   * Interval in milliseconds after the user sent a message.
+   */
+  public static final long MIN_INTERVAL = 60 * 1000L;
+
+  /**
+   * Longest interval in milliseconds while the thread is idle.
+   */
+  public static final long MAX_INTERVAL = 60 * 60 * 1000L;
+
+  /**
+   * Time in milliseconds in which a further check on request is dropped.
+   */
+  public static final long COALESCE_WINDOW = 30 * 1000L;
+
+  /**
+   * Battery level in percent below which the interval is MAX_INTERVAL
+   * while the device is not charging.
+   */
+  private static final int LOW_BATTERY_LEVEL = 15;
+
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+
+  private static final Runnable pollRunnable = new Runnable() {
+    @Override
+    public void run() {
+      check(true);
+    }
+  };
+
+  private static Context context = null;
+  private static String urlString = null;
+  private static boolean polling = false;
+  private static boolean running = false;
+  private static long interval = MIN_INTERVAL;
+  private static long lastCheckTime = -1;
+  private static long retryAfterTime = 0;
+  private static byte[] lastDigest = null;
+
+  /**
+   * Starts polling, the first check runs right away unless the last check
+   * was only a moment ago. Usually called in onResume.
+   *
+   * @param context the context to use
+   * @param urlString URL for fetching the messages
+   */
+  public static void start(Context context, String urlString) {
+    setTarget(context, urlString);
+    polling = true;
+    handler.removeCallbacks(pollRunnable);
+    check(false);
+  }
+
+  /**
+   * Stops polling, a running check is finished. Usually called in onPause.
+   */
+  public static void stop() {
+    polling = false;
+    handler.removeCallbacks(pollRunnable);
+  }
+
+  /**
+   * Checks for answers once. The check is dropped if an other check is
+   * running or the last one was less than {@link #COALESCE_WINDOW} ago.
+   *
+   * @param context the context to use
+   * @param urlString URL for fetching the messages
+   */
+  public static void checkNow(Context context, String urlString) {
+    setTarget(context, urlString);
+    check(false);
+  }
+
+  /**
+   * Called when the user sent a message, as an answer is most likely soon
+   * after that.
+   */
+  public static void onMessageSent() {
+    interval = MIN_INTERVAL;
+    if ((polling) && (!running)) {
+      schedule();
+    }
+  }
+
+  private static void setTarget(Context context, String urlString) {
+    if (context != null) {
+      FeedbackPoller.context = context.getApplicationContext();
+    }
+    FeedbackPoller.urlString = urlString;
+  }
+
+  private static void check(boolean scheduled) {
+    if ((running) || (context == null) || (urlString == null)) {
+      return;
+    }
+
+    long now = SystemClock.elapsedRealtime();
+    if ((now < retryAfterTime) || ((!scheduled) && (lastCheckTime >= 0) && (now - lastCheckTime < COALESCE_WINDOW))) {
+      if (polling) {
+        schedule();
+      }
+      return;
+    }
+
+    final String token = PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context);
+    if (token == null) {
+      // Nothing to check until the user sent the first message
+      interval = MAX_INTERVAL;
+      if (polling) {
+        schedule();
+      }
+      return;
+    }
+
+    final Context context = FeedbackPoller.context;
+    final String urlString = FeedbackPoller.urlString;
+    final int lastMessageId = context.getSharedPreferences(ParseFeedbackTask.PREFERENCES_NAME, 0)
+        .getInt(ParseFeedbackTask.ID_LAST_MESSAGE_SEND, -1);
+
+    SendFeedbackTask sendFeedbackTask = new SendFeedbackTask(context, urlString, null, null, null, null, null, token, new Handler() {
+      @Override
+      public void handleMessage(Message msg) {
+        onFetched(context, urlString, token, lastMessageId, msg.getData());
+      }
+    }, true);
+    sendFeedbackTask.setShowProgressDialog(false);
+    sendFeedbackTask.setLastMessageId(lastMessageId);
+
+    running = true;
+    lastCheckTime = now;
+    AsyncTaskUtils.execute(sendFeedbackTask, Priority.FEEDBACK);
+  }
+
+  private static void onFetched(Context context, String urlString, String token, int lastMessageId, Bundle bundle) {
+    running = false;
+
+    String responseString = bundle.getString("feedback_response");
+    int status = parseStatus(bundle.getString("feedback_status"));
+
+    long retryAfter = parseRetryAfter(bundle.getString("feedback_retry_after"));
+    if (retryAfter > 0) {
+      retryAfterTime = SystemClock.elapsedRealtime() + retryAfter;
+    }
+
+    boolean changed = true;
+    if ((responseString != null) && (status / 100 == 2)) {
+      byte[] digest = digest(token + ":" + lastMessageId + ":" + responseString);
+      changed = ((digest == null) || (!Arrays.equals(digest, lastDigest)));
+
+      // The first response after the start is no sign of activity
+      boolean firstResponse = (lastDigest == null);
+      lastDigest = digest;
+      interval = ((changed) && (!firstResponse) ? MIN_INTERVAL : Math.min(interval * 2, MAX_INTERVAL));
+    }
+    else {
+      interval = Math.min(interval * 2, MAX_INTERVAL);
+    }
+
+    if ((responseString != null) && (changed)) {
+      ParseFeedbackTask task = new ParseFeedbackTask(context, responseString, null, "fetch");
+      task.setUrlString(urlString);
+      task.setLastMessageId(lastMessageId);
+      AsyncTaskUtils.execute(task, Priority.FEEDBACK);
+    }
+
+    if (polling) {
+      schedule();
+    }
+  }
+
+  private static void schedule() {
+    long delay = Math.max(getBatteryAwareInterval(), retryAfterTime - SystemClock.elapsedRealtime());
+    handler.removeCallbacks(pollRunnable);
+    handler.postDelayed(pollRunnable, delay);
+  }
+
+  /**
+   * Returns the interval for the battery state. The interval is doubled
+   * while the device is not charging and MAX_INTERVAL while the battery is
+   * low. The state is read from the sticky battery broadcast, so no
+   * receiver or permission is needed.
+   */
+  private static long getBatteryAwareInterval() {
+    Intent battery = (context != null ? context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED)) : null);
+    if ((battery == null) || (battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0)) {
+      return interval;
+    }
+
+    int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+    int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+    if ((level >= 0) && (scale > 0) && (level * 100 / scale < LOW_BATTERY_LEVEL)) {
+      return MAX_INTERVAL;
+    }
+    return Math.min(interval * 2, MAX_INTERVAL);
+  }
+
+  private static int parseStatus(String status) {
+    if (status == null) {
+      return -1;
+    }
+
+    try {
+      return Integer.parseInt(status);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the delay of a Retry-After header, which holds either the
+   * seconds to wait or a date.
+   *
+   * @param retryAfter value of the Retry-After header, may be null
+   * @return delay in milliseconds or -1 if not present
+   */
+  static long parseRetryAfter(String retryAfter) {
+    if (retryAfter == null) {
+      return -1;
+    }
+
+    retryAfter = retryAfter.trim();
+    try {
+      return Long.parseLong(retryAfter) * 1000L;
+    }
+    catch (NumberFormatException e) {
+    }
+
+    try {
+      return DateUtils.parseDate(retryAfter).getTime() - System.currentTimeMillis();
+    }
+    catch (DateParseException e) {
+      return -1;
+    }
+  }
+
+  private static byte[] digest(String value) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+    }
+    catch (NoSuchAlgorithmException e) {
+      return null;
+    }
+    catch (UnsupportedEncodingException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package net.hockeyapp.android.tasks;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.AsyncTask;
+import android.util.Log;
+import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.FeedbackActivity;
+import net.hockeyapp.android.FeedbackManager;
+import net.hockeyapp.android.Strings;
+import net.hockeyapp.android.objects.FeedbackResponse;
+import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.ConnectionManager;
+import net.hockeyapp.android.utils.FeedbackOutbox;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import net.hockeyapp.android.utils.PrefsUtil;
+
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Sends the messages of the {@link FeedbackOutbox} in the order they were
+ * queued. Each message is sent with its idempotency key and removed from
+ * the outbox once the server accepted it. If a message fails again, the
+ * later messages wait as well and the outbox is flushed again when the
+ * device is connected. A message which was rejected by the server, failed
+ * too often or is too old is removed, and the user is notified, so a
+ * broken message can't block the outbox. Must be used from the UI thread.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class FlushOutboxTask extends AsyncTask<Void, Void, Boolean> {
+  public static final int SEND_FAILED_NOTIFICATION_ID = 3;
+
+  /**
+   * Number of failed attempts after which a message is dropped.
+   */
+  private static final int MAX_FAILED_ATTEMPTS = 20;
+
+  /**
+   * Age in milliseconds after which a message which still fails is dropped.
+   */
+  private static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+  private static FlushOutboxTask runningTask = null;
+  private static boolean flushAgain = false;
+  private static BroadcastReceiver connectivityReceiver = null;
+
+  /**
+   * Sends the queued messages. If a flush is running, an other one starts
+   * when it finished.
+   *
+   * @param context the context to use
+   */
+  public static void flush(Context context) {
+    if (context == null) {
+      return;
+    }
+
+    if (runningTask != null) {
+      flushAgain = true;
+      return;
+    }
+
+    runningTask = new FlushOutboxTask(context.getApplicationContext());
+    AsyncTaskUtils.execute(runningTask, Priority.FEEDBACK);
+  }
+
+  private final Context context;
+  private boolean sent;
+  private String droppedUrlString;
+
+  private FlushOutboxTask(Context context) {
+    this.context = context;
+    this.sent = false;
+    this.droppedUrlString = null;
+  }
+
+  /**
+   * @return true if messages are left in the outbox
+   */
+  @Override
+  protected Boolean doInBackground(Void... params) {
+    for (FeedbackOutbox.Item item : FeedbackOutbox.getItems(context)) {
+      if (!item.hasAttachments()) {
+        // Sending would fail the same way each time
+        drop(item, "its attachments are missing");
+        continue;
+      }
+
+      // The first message may have started the thread, so the token is read for each
+      String token = PrefsUtil.getInstance().getFeedbackTokenFromPrefs(context);
+      SendFeedbackTask task = new SendFeedbackTask(context, item.getUrlString(), item.getName(), item.getEmail(), item.getSubject(),
+          item.getText(), item.getAttachmentUris(), token, null, false);
+      task.setIdempotencyKey(item.getIdempotencyKey());
+      // Same as after a message was sent from the feedback activity
+      ParseFeedbackTask parser = new ParseFeedbackTask(context, null, null, "send");
+      task.setResponseParser(parser);
+
+      HashMap<String, String> result;
+      try {
+        result = task.send(ConnectionManager.getInstance());
+      }
+      catch (RuntimeException e) {
+        // A local error, e.g. an attachment which can't be read anymore
+        drop(item, "sending it failed with " + e);
+        continue;
+      }
+
+      if (SendFeedbackTask.isTransientFailure(result)) {
+        FeedbackOutbox.recordFailedAttempt(context, item);
+        if ((item.getFailedAttempts() < MAX_FAILED_ATTEMPTS) && (System.currentTimeMillis() - item.getQueuedAt() < MAX_AGE)) {
+          return true;
+        }
+
+        drop(item, "it failed " + item.getFailedAttempts() + " times since " + new Date(item.getQueuedAt()));
+        continue;
+      }
+
+      String response = result.get("response");
+      if ("201".equals(result.get("status"))) {
+        sent = true;
+        onSent(response != null ? new ParseFeedbackTask(context, response, null, "send").parse() : task.getParsedResponse());
+        FeedbackOutbox.remove(context, item);
+      }
+      else {
+        drop(item, "it was rejected with status " + result.get("status"));
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Removes a message which can't be sent. The user is notified in
+   * onPostExecute, so the message can be written again.
+   */
+  private void drop(FeedbackOutbox.Item item, String reason) {
+    Log.w(Constants.TAG, "Dropping queued feedback, as " + reason + ".");
+    FeedbackOutbox.remove(context, item);
+    droppedUrlString = item.getUrlString();
+  }
+
+  @Override
+  protected void onPostExecute(Boolean remaining) {
+    runningTask = null;
+
+    if (droppedUrlString != null) {
+      showDroppedNotification(droppedUrlString);
+    }
+
+    if (sent) {
+      FeedbackPoller.onMessageSent();
+    }
+
+    if (flushAgain) {
+      flushAgain = false;
+      flush(context);
+    }
+    else {
+      watchConnectivity(context, remaining);
+    }
+  }
+
+  private void onSent(FeedbackResponse feedbackResponse) {
+    if ((feedbackResponse != null) && ("success".equalsIgnoreCase(feedbackResponse.getStatus())) && (feedbackResponse.getToken() != null)) {
+      PrefsUtil.getInstance().saveFeedbackTokenToPrefs(context, feedbackResponse.getToken());
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private void showDroppedNotification(String urlString) {
+    NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    int iconId = context.getResources().getIdentifier("ic_dialog_alert", "drawable", "android");
+    Notification notification = new Notification(iconId, Strings.get(Strings.FEEDBACK_SEND_DROPPED_TITLE_ID), System.currentTimeMillis());
+    notification.flags |= Notification.FLAG_AUTO_CANCEL;
+
+    Class<?> activityClass = null;
+    if (FeedbackManager.getLastListener() != null) {
+      activityClass = FeedbackManager.getLastListener().getFeedbackActivityClass();
+    }
+    if (activityClass == null) {
+      activityClass = FeedbackActivity.class;
+    }
+
+    Intent intent = new Intent();
+    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+    intent.setClass(context, activityClass);
+    intent.putExtra("url", urlString);
+
+    PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_ONE_SHOT);
+    notification.setLatestEventInfo(context, Strings.get(Strings.FEEDBACK_SEND_DROPPED_TITLE_ID), Strings.get(Strings.FEEDBACK_SEND_DROPPED_TEXT_ID), pendingIntent);
+    notificationManager.notify(SEND_FAILED_NOTIFICATION_ID, notification);
+  }
+
+  private static void watchConnectivity(Context context, boolean watch) {
+    if ((watch) && (connectivityReceiver == null)) {
+      connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+          if ((!isInitialStickyBroadcast()) && (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false))) {
+            flush(context);
+          }
+        }
+      };
+      context.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+    else if ((!watch) && (connectivityReceiver != null)) {
+      context.unregisterReceiver(connectivityReceiver);
+      connectivityReceiver = null;
+    }
+  }
+}
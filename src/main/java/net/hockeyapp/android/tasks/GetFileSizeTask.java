@@ -2,9 +2,14 @@ package net.hockeyapp.android.tasks;
 
 import android.content.Context;
 import net.hockeyapp.android.listeners.DownloadFileListener;
+import net.hockeyapp.android.utils.ConnectionManager;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
 
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.IOException;
 
 /**
  * <h3>Description</h3>
@@ -51,9 +56,24 @@ public class GetFileSizeTask extends DownloadFileTask {
   @Override
   protected Long doInBackground(Void... args) {
     try {
-      URL url = new URL(getURLString());
-      URLConnection connection = createConnection(url, MAX_REDIRECTS);
-      return (long)connection.getContentLength();
+      // Some hosts, e.g. S3, reject HEAD requests for signed URLs, so a GET
+      // is used and aborted once the headers are read
+      HttpGet request = new HttpGet(getURLString());
+      request.setHeader("Accept-Encoding", "identity");
+      HttpResponse response = ConnectionManager.getInstance().execute(request);
+      try {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+          return 0L;
+        }
+
+        Header header = response.getFirstHeader("Content-Length");
+        return (header != null ? Long.parseLong(header.getValue().trim()) : 0L);
+      }
+      finally {
+        // Closes the connection instead of reading the whole file
+        request.abort();
+        closeQuietly(response.getEntity());
+      }
     }
     catch (Exception e) {
       e.printStackTrace();
@@ -61,6 +81,22 @@ public class GetFileSizeTask extends DownloadFileTask {
     }
   }
 
+  /**
+   * Closes the body of a response from a transport set by the app, which
+   * isn't closed by aborting the request.
+   */
+  private static void closeQuietly(HttpEntity entity) {
+    if (entity == null) {
+      return;
+    }
+
+    try {
+      entity.getContent().close();
+    }
+    catch (IOException e) {
+    }
+  }
+
   @Override
   protected void onProgressUpdate(Integer... args) {
     // Do not display any progress for this task.
@@ -17,7 +17,6 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -127,11 +126,11 @@ public class LoginTask extends AsyncTask<Void, Void, Boolean> {
 
   @Override
   protected Boolean doInBackground(Void... args) {
-    HttpClient httpClient = ConnectionManager.getInstance().getHttpClient();
+    ConnectionManager transport = ConnectionManager.getInstance();
 
     try {
       HttpUriRequest httpUriRequest = makeRequest(mode, params);
-      HttpResponse response = httpClient.execute(httpUriRequest);
+      HttpResponse response = transport.execute(httpUriRequest);
 
       if (response != null) {
         HttpEntity resEntity = response.getEntity();
@@ -1,5 +1,6 @@
 package net.hockeyapp.android.tasks;
 
+import android.annotation.TargetApi;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -7,6 +8,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -17,8 +19,11 @@ import net.hockeyapp.android.objects.Feedback;
 import net.hockeyapp.android.objects.FeedbackMessage;
 import net.hockeyapp.android.objects.FeedbackResponse;
 import net.hockeyapp.android.utils.FeedbackParser;
+import net.hockeyapp.android.utils.FeedbackStore;
+import net.hockeyapp.android.utils.JSONReaderUtils;
 import net.hockeyapp.android.utils.PrefsUtil;
 
+import java.io.Reader;
 import java.util.ArrayList;
 
 /**
@@ -62,11 +67,21 @@ public class ParseFeedbackTask extends AsyncTask<Void, Void, FeedbackResponse> {
   public static final String ID_LAST_MESSAGE_SEND      = "idLastMessageSend";
   public static final String ID_LAST_MESSAGE_PROCESSED = "idLastMessageProcessed";
 
+  /**
+   * Receives the parsed response on the UI thread, without copying it
+   * into a {@link Bundle}.
+   */
+  public interface FeedbackParsedListener {
+    public void onFeedbackParsed(FeedbackResponse response);
+  }
+
   private Context context;
   private String feedbackResponse;
   private Handler handler;
+  private FeedbackParsedListener listener;
   private String requestType;
   private String urlString;
+  private int lastMessageId;
   
   public ParseFeedbackTask(Context context, String feedbackResponse, Handler handler, String requestType) {
     this.context = context;
@@ -74,35 +89,101 @@ public class ParseFeedbackTask extends AsyncTask<Void, Void, FeedbackResponse> {
     this.handler = handler;
     this.requestType = requestType;
     this.urlString = null;
+    this.lastMessageId = -1;
+  }
+
+  /**
+   * Sets the listener for the parsed response. The listener and the handler
+   * get the same response object, the bundle sent to the handler is not
+   * serialized within the process. So neither of them may change it.
+   *
+   * @param listener the listener or null
+   */
+  public void setFeedbackParsedListener(FeedbackParsedListener listener) {
+    this.listener = listener;
   }
 
   public void setUrlString(String urlString) {
     this.urlString = urlString;
   }
+
+  /**
+   * Sets the last message id the response was fetched with. The response
+   * then only contains newer messages and is merged with the stored thread.
+   *
+   * @param lastMessageId id of the last stored message or -1
+   */
+  public void setLastMessageId(int lastMessageId) {
+    this.lastMessageId = lastMessageId;
+  }
   
   @Override
   protected FeedbackResponse doInBackground(Void... params) {
+    return parse();
+  }
+
+  /**
+   * Parses the response and merges it into the store on the calling thread.
+   *
+   * @return the parsed response or null
+   */
+  FeedbackResponse parse() {
     if (context != null && feedbackResponse != null) {
-      FeedbackResponse response = FeedbackParser.getInstance().parseFeedbackResponse(feedbackResponse);
-
-      if (response != null) {
-        Feedback feedback = response.getFeedback();
-        if (feedback != null) {
-          ArrayList<FeedbackMessage> messages = response.getFeedback().getMessages();
-          if (messages != null && !messages.isEmpty()) {
-            checkForNewAnswers(messages);
-          }
+      return process(FeedbackParser.getInstance().parseFeedbackResponse(feedbackResponse));
+    }
+    
+    return null;
+  }
+
+  /**
+   * Parses the response while it is read and merges it into the store on
+   * the calling thread, without reading the whole response into a string
+   * first. Only available with JsonReader, see {@link JSONReaderUtils}.
+   *
+   * @param input reader for the response, is not closed
+   * @return the parsed response or null
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  FeedbackResponse parse(Reader input) {
+    if (context != null) {
+      return process(FeedbackParser.getInstance().parseFeedbackResponse(input));
+    }
+
+    return null;
+  }
+
+  private FeedbackResponse process(FeedbackResponse response) {
+    if (response != null) {
+      Feedback feedback = response.getFeedback();
+      if (feedback != null) {
+        ArrayList<FeedbackMessage> messages = response.getFeedback().getMessages();
+        if (messages != null && !messages.isEmpty()) {
+          checkForNewAnswers(messages);
         }
       }
 
-      return response;
+      response = FeedbackStore.merge(context, response, lastMessageId);
     }
-    
-    return null;
+
+    return response;
   }
   
   @Override
   protected void onPostExecute(FeedbackResponse result) {
+    deliver(result);
+  }
+
+  /**
+   * Hands the parsed response to the listener and the handler, called on
+   * the UI thread.
+   *
+   * @param result the parsed response or null
+   */
+  void deliver(FeedbackResponse result) {
+    if (result != null && listener != null) {
+      listener.onFeedbackParsed(result);
+    }
+
     if (result != null && handler != null) {
       Message msg = new Message();
       Bundle bundle = new Bundle();
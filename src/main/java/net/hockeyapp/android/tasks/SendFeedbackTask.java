@@ -9,14 +9,18 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.objects.FeedbackResponse;
+import net.hockeyapp.android.utils.AttachmentPreparer;
 import net.hockeyapp.android.utils.ConnectionManager;
+import net.hockeyapp.android.utils.FeedbackOutbox;
+import net.hockeyapp.android.utils.JSONReaderUtils;
 import net.hockeyapp.android.utils.SimpleMultipartEntity;
 import net.hockeyapp.android.utils.Util;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -29,6 +33,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * <h3>Description</h3>
@@ -78,6 +83,10 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
   private ProgressDialog progressDialog;
   private boolean showProgressDialog;
   private int lastMessageId;
+  private String idempotencyKey;
+  private boolean queueOnFailure;
+  private ParseFeedbackTask responseParser;
+  private FeedbackResponse parsedResponse;
 
   /**
    * Send feedback {@link AsyncTask}.
@@ -111,6 +120,8 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
     this.isFetchMessages = isFetchMessages;
     this.showProgressDialog = true;
     this.lastMessageId = -1;
+    this.idempotencyKey = UUID.randomUUID().toString();
+    this.queueOnFailure = false;
 
     if (context != null) {
       Constants.loadFromContext(context);
@@ -125,6 +136,50 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
     this.lastMessageId = lastMessageId;
   }
 
+  /**
+   * Sets the key which identifies the message, so the server can drop
+   * the message if an earlier attempt already reached it. A new task gets
+   * a random key.
+   *
+   * @param idempotencyKey the key of the message
+   */
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
+  /**
+   * If true, the message is put into the {@link FeedbackOutbox} if it
+   * can't be sent because of the connection or the server, and sent again
+   * later. The message is also queued if older messages are waiting, so
+   * it doesn't overtake them.
+   *
+   * @param queueOnFailure true to queue failed messages
+   */
+  public void setQueueOnFailure(boolean queueOnFailure) {
+    this.queueOnFailure = queueOnFailure;
+  }
+
+  /**
+   * Sets the task which parses a successful response. The response is then
+   * parsed while it is read from the connection, instead of being read into
+   * a string first, and the parser's listener gets the result. The bundle for
+   * the handler has "feedback_parsed" set to "true" instead of a
+   * "feedback_response". Without JsonReader (before API 11), the response
+   * string is handed to the handler as before.
+   *
+   * @param responseParser the parser or null
+   */
+  public void setResponseParser(ParseFeedbackTask responseParser) {
+    this.responseParser = responseParser;
+  }
+
+  /**
+   * @return the response parsed by the response parser or null
+   */
+  FeedbackResponse getParsedResponse() {
+    return parsedResponse;
+  }
+
   public void attach(Context context) {
     this.context = context;
   }
@@ -148,41 +203,90 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
   
   @Override
   protected HashMap<String, String> doInBackground(Void... args) {
-    HttpClient httpclient = ConnectionManager.getInstance().getHttpClient();
+    ConnectionManager transport = ConnectionManager.getInstance();
 
     if (isFetchMessages && token != null) {
       /** If we are fetching messages then do a GET */
-      return doGet(httpclient);
+      return doGet(transport);
     } 
     else if (!isFetchMessages) {
-      /** 
-       * If we are sending a feedback do POST, and if we are sending a feedback
-       * to an existing discussion do PUT
-       */
-      if (attachmentUris.isEmpty()) {
-        return doPostPut(httpclient);
-      } 
-      else {
-        HashMap<String, String> result = doPostPutWithAttachments(httpclient);
-
-        /** Clear temporary folder */
-        String status = result.get("status");
-        if ((status != null) && (status.startsWith("2")) && (context != null)) {
-          File folder = new File(context.getCacheDir(), Constants.TAG);
-          if (folder.exists()) {
-            for (File file : folder.listFiles()) {
-              file.delete();
-            }
-          }
+      if ((queueOnFailure) && (!FeedbackOutbox.isEmpty(context))) {
+        /** Older messages are waiting, so this one is sent after them */
+        HashMap<String, String> queued = enqueue();
+        if (queued != null) {
+          return queued;
         }
+      }
 
-        return result;
+      String baseUrlString = urlString;
+      HashMap<String, String> result = send(transport);
+      if ((queueOnFailure) && (isTransientFailure(result))) {
+        urlString = baseUrlString;
+        HashMap<String, String> queued = enqueue();
+        if (queued != null) {
+          return queued;
+        }
       }
+      return result;
     }
     
     return null;
   }
 
+  /**
+   * Sends the feedback message on the calling thread.
+   *
+   * @param transport the transport to use
+   * @return the result with type, response and status
+   */
+  HashMap<String, String> send(ConnectionManager transport) {
+    /** 
+     * If we are sending a feedback do POST, and if we are sending a feedback
+     * to an existing discussion do PUT
+     */
+    if ((attachmentUris == null) || (attachmentUris.isEmpty())) {
+      return doPostPut(transport);
+    } 
+    else {
+      // The prepared attachments are deleted by the caller, other files in
+      // the cache folder may belong to a message which is sent right now
+      return doPostPutWithAttachments(transport);
+    }
+  }
+
+  /**
+   * Returns true if the message wasn't sent because of the connection or
+   * a temporary server error, so it may succeed later.
+   *
+   * @param result the result of {@link #send(ConnectionManager)}
+   * @return true if sending again makes sense
+   */
+  static boolean isTransientFailure(HashMap<String, String> result) {
+    String status = (result != null ? result.get("status") : null);
+    if (status == null) {
+      return true;
+    }
+
+    try {
+      int statusCode = Integer.parseInt(status);
+      return ((statusCode == 408) || (statusCode == 429) || (statusCode >= 500));
+    }
+    catch (NumberFormatException e) {
+      return true;
+    }
+  }
+
+  private HashMap<String, String> enqueue() {
+    if (!FeedbackOutbox.enqueue(context, idempotencyKey, urlString, name, email, subject, text, attachmentUris)) {
+      return null;
+    }
+
+    HashMap<String, String> result = new HashMap<String, String>();
+    result.put("type", "send");
+    result.put("queued", "true");
+    return result;
+  }
+
   @Override
   protected void onPostExecute(HashMap<String, String> result) {
     if (progressDialog != null) {
@@ -202,7 +306,10 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
       if (result != null) {
 	      bundle.putString("request_type", (String)result.get("type"));
 	      bundle.putString("feedback_response", (String)result.get("response"));
+	      bundle.putString("feedback_parsed", (String)result.get("parsed"));
 	      bundle.putString("feedback_status", (String)result.get("status"));
+	      bundle.putString("feedback_retry_after", (String)result.get("retry_after"));
+	      bundle.putString("feedback_queued", (String)result.get("queued"));
       }
       else {
         bundle.putString("request_type", "unknown");
@@ -212,14 +319,42 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
 
       handler.sendMessage(msg);
     }
+
+    if ((responseParser != null) && (result != null) && ("true".equals(result.get("parsed")))) {
+      responseParser.deliver(parsedResponse);
+    }
+  }
+
+  /**
+   * Puts the status and the response into the result. A successful response
+   * is parsed while it is read if a response parser is set.
+   */
+  private void readResponse(HttpResponse response, HashMap<String, String> result) throws IOException {
+    int status = response.getStatusLine().getStatusCode();
+    HttpEntity entity = response.getEntity();
+    if ((responseParser != null) && (entity != null) && (status / 100 == 2) && (JSONReaderUtils.isSupported())) {
+      String charset = EntityUtils.getContentCharSet(entity);
+      Reader reader = new InputStreamReader(entity.getContent(), (charset != null ? charset : "UTF-8"));
+      try {
+        parsedResponse = responseParser.parse(reader);
+      }
+      finally {
+        reader.close();
+      }
+      result.put("parsed", "true");
+    }
+    else {
+      result.put("response", EntityUtils.toString(entity));
+    }
+    result.put("status", "" + status);
   }
   
   /**
    * POST/PUT
-   * @param httpClient
+   * @param transport
    * @return
    */
-  private HashMap<String, String> doPostPut(HttpClient httpClient) {
+  private HashMap<String, String> doPostPut(ConnectionManager transport) {
     HashMap<String, String> result = new HashMap<String, String>();
     result.put("type", "send");
 
@@ -251,18 +386,18 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
       
       HttpResponse response = null;
       if (httpPut != null) {
+        httpPut.setHeader("Idempotency-Key", idempotencyKey);
         httpPut.setEntity(form);
-        response = (HttpResponse) httpClient.execute(httpPut);
+        response = (HttpResponse) transport.execute(httpPut);
       } 
       else if (httpPost != null) {
+        httpPost.setHeader("Idempotency-Key", idempotencyKey);
         httpPost.setEntity(form);
-        response = (HttpResponse) httpClient.execute(httpPost);
+        response = (HttpResponse) transport.execute(httpPost);
       }
       
       if (response != null) {
-        HttpEntity resEntity = response.getEntity();  
-        result.put("response", EntityUtils.toString(resEntity));
-        result.put("status", "" + response.getStatusLine().getStatusCode());
+        readResponse(response, result);
       }
     } 
     catch (UnsupportedEncodingException e) {
@@ -280,13 +415,16 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
 
   /**
    * POST/PUT with attachments
-   * @param httpClient
+   * @param transport
    * @return
    */
-  private HashMap<String, String> doPostPutWithAttachments(HttpClient httpClient) {
+  private HashMap<String, String> doPostPutWithAttachments(ConnectionManager transport) {
     HashMap<String, String> result = new HashMap<String, String>();
     result.put("type", "send");
 
+    /** Scale down and compress images before the upload */
+    List<Uri> uploadUris = AttachmentPreparer.prepare(context, attachmentUris);
+
     try {
       List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
       nameValuePairs.add(new BasicNameValuePair("name", name));
@@ -313,9 +451,8 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
         Uri attachmentUri = attachmentUris.get(i);
         boolean lastFile = (i == attachmentUris.size() - 1);
 
-        InputStream input = context.getContentResolver().openInputStream(attachmentUri);
         String filename = attachmentUri.getLastPathSegment();
-        entity.addPart("attachment" + i, filename, input, lastFile);
+        entity.addPart("attachment" + i, filename, context.getContentResolver(), uploadUris.get(i), lastFile);
       }
       entity.writeLastBoundaryIfNeeds();
 
@@ -331,20 +468,20 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
 
       HttpResponse response = null;
       if (httpPut != null) {
+        httpPut.setHeader("Idempotency-Key", idempotencyKey);
         httpPut.setHeader("Content-type", "multipart/form-data; boundary=" + entity.getBoundary());
         httpPut.setEntity(entity);
-        response = (HttpResponse) httpClient.execute(httpPut);
+        response = (HttpResponse) transport.execute(httpPut);
       }
       else if (httpPost != null) {
+        httpPost.setHeader("Idempotency-Key", idempotencyKey);
         httpPost.setHeader("Content-type", "multipart/form-data; boundary=" + entity.getBoundary());
         httpPost.setEntity(entity);
-        response = (HttpResponse) httpClient.execute(httpPost);
+        response = (HttpResponse) transport.execute(httpPost);
       }
 
       if (response != null) {
-        HttpEntity resEntity = response.getEntity();
-        result.put("response", EntityUtils.toString(resEntity));
-        result.put("status", "" + response.getStatusLine().getStatusCode());
+        readResponse(response, result);
       }
     }
     catch (UnsupportedEncodingException e) {
@@ -356,16 +493,19 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
     catch (IOException e) {
       e.printStackTrace();
     }
+    finally {
+      AttachmentPreparer.cleanUp(attachmentUris, uploadUris);
+    }
 
     return result;
   }
   
   /**
    * GET
-   * @param httpClient
+   * @param transport
    * @return
    */
-  private HashMap<String, String> doGet(HttpClient httpClient) {
+  private HashMap<String, String> doGet(ConnectionManager transport) {
     StringBuilder sb = new StringBuilder();
     sb.append(urlString + Util.encodeParam(token));
 
@@ -380,11 +520,13 @@ public class SendFeedbackTask extends AsyncTask<Void, Void, HashMap<String, Stri
 
     /** Execute HTTP Post Request */
     try {
-      HttpResponse response = (HttpResponse) httpClient.execute(httpGet);
-      HttpEntity responseEntity = response.getEntity();
-      
-      result.put("response", EntityUtils.toString(responseEntity));
-      result.put("status", "" + response.getStatusLine().getStatusCode());
+      HttpResponse response = (HttpResponse) transport.execute(httpGet);
+      readResponse(response, result);
+
+      Header retryAfter = response.getFirstHeader("Retry-After");
+      if (retryAfter != null) {
+        result.put("retry_after", retryAfter.getValue());
+      }
     } 
     catch (ClientProtocolException e) {
       e.printStackTrace();
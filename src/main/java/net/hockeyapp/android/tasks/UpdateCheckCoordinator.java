@@ -0,0 +1,163 @@
+package net.hockeyapp.android.tasks;
+
+import android.os.AsyncTask.Status;
+import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.NetworkScheduler.Priority;
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Makes sure that only one update check runs at a time. Tasks which are
+ * submitted while a check for the same app is running don't go to the
+ * network, they get the result of the running check instead. A result
+ * which is only a few seconds old is delivered from memory. Must be used
+ * from the UI thread.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class UpdateCheckCoordinator {
+  /**
+   * Time in milliseconds in which a result is delivered from memory.
+   */
+  public static final long RESULT_REUSE_WINDOW = 10 * 1000L;
+
+  private static CheckUpdateTask runningTask = null;
+  private static final List<CheckUpdateTask> subscribers = new ArrayList<CheckUpdateTask>();
+
+  private static String lastFeed = null;
+  private static JSONArray lastResult = null;
+  private static boolean lastMandatory = false;
+  private static long lastResultTime = 0;
+
+  /**
+   * Starts the task, or lets it wait for the result of the running check.
+   *
+   * @param task the new update task
+   */
+  public static void submit(CheckUpdateTask task) {
+    if (deliverFromMemory(task)) {
+      return;
+    }
+
+    if (isRunning()) {
+      if (runningTask.getFeed().equals(task.getFeed())) {
+        subscribe(task);
+      }
+      else {
+        // Checks for different apps or servers can't share a result
+        AsyncTaskUtils.execute(task, Priority.UPDATE_CHECK);
+      }
+      return;
+    }
+
+    runningTask = task;
+    AsyncTaskUtils.execute(task, Priority.UPDATE_CHECK);
+  }
+
+  /**
+   * Cancels the running check and drops all waiting tasks.
+   */
+  public static void cancel() {
+    for (CheckUpdateTask subscriber : subscribers) {
+      subscriber.detach();
+    }
+    subscribers.clear();
+
+    if (runningTask != null) {
+      CheckUpdateTask task = runningTask;
+      runningTask = null;
+      task.cancel(true);
+      task.detach();
+    }
+  }
+
+  /**
+   * Called by a task when it finished or was cancelled.
+   */
+  static void onFinished(CheckUpdateTask task, JSONArray updateInfo) {
+    if (task != runningTask) {
+      return;
+    }
+    runningTask = null;
+
+    if (task.isChecked()) {
+      lastFeed = task.getFeed();
+      lastResult = updateInfo;
+      lastMandatory = task.isMandatory();
+      lastResultTime = System.currentTimeMillis();
+    }
+
+    List<CheckUpdateTask> waiting = new ArrayList<CheckUpdateTask>(subscribers);
+    subscribers.clear();
+    for (CheckUpdateTask subscriber : waiting) {
+      if ((task.isChecked()) || (subscriber.getSchedulingEnabled())) {
+        subscriber.deliver(updateInfo, task.isMandatory());
+      }
+      else {
+        // The check was throttled or failed, but this task must ask the server
+        submit(subscriber);
+      }
+    }
+  }
+
+  private static boolean isRunning() {
+    return ((runningTask != null) && (runningTask.getStatus() != Status.FINISHED));
+  }
+
+  private static boolean deliverFromMemory(CheckUpdateTask task) {
+    long age = System.currentTimeMillis() - lastResultTime;
+    if ((lastFeed == null) || (age < 0) || (age >= RESULT_REUSE_WINDOW) || (!lastFeed.equals(task.getFeed()))) {
+      return false;
+    }
+
+    task.deliver(lastResult, lastMandatory);
+    return true;
+  }
+
+  private static void subscribe(CheckUpdateTask task) {
+    if (task instanceof CheckUpdateTaskWithUI) {
+      // Show only one dialog per activity, from the newest registration
+      CheckUpdateTaskWithUI uiTask = (CheckUpdateTaskWithUI)task;
+      if (uiTask.hasSameActivity(runningTask)) {
+        ((CheckUpdateTaskWithUI)runningTask).suppressDialog();
+      }
+      for (CheckUpdateTask subscriber : subscribers) {
+        if (uiTask.hasSameActivity(subscriber)) {
+          ((CheckUpdateTaskWithUI)subscriber).suppressDialog();
+        }
+      }
+    }
+
+    subscribers.add(task);
+  }
+}
@@ -1,5 +1,6 @@
 package net.hockeyapp.android.utils;
 
+import android.annotation.TargetApi;
 import android.os.AsyncTask;
 import android.os.Build;
 
@@ -7,7 +8,8 @@ import android.os.Build;
  * <h3>Description</h3>
  * 
  * Either calls execute or executeOnExecutor on an AsyncTask depending on the
- * API level.
+ * API level. On Android 3.0 and later, tasks with a priority run on the
+ * thread pool of {@link NetworkScheduler}.
  * 
  * <h3>License</h3>
  * 
@@ -47,4 +49,13 @@ public class AsyncTaskUtils {
       asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
   }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  public static void execute(AsyncTask<Void, ?, ?> asyncTask, NetworkScheduler.Priority priority) {
+    if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.HONEYCOMB_MR1) {
+      asyncTask.execute();
+    } else {
+      asyncTask.executeOnExecutor(NetworkScheduler.getExecutor(priority));
+    }
+  }
 }
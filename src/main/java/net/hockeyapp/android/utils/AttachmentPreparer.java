@@ -0,0 +1,365 @@
+package net.hockeyapp.android.utils;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+import net.hockeyapp.android.Constants;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to shrink image attachments before they are
+ * uploaded. JPEG and PNG images which are larger than the maximum
+ * dimension are scaled down, JPEG images are encoded again with the
+ * target quality. The result is written to a temporary file and only
+ * used if it is smaller than the original. Other files are uploaded
+ * unchanged. Must be called from a background thread.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class AttachmentPreparer {
+  /**
+   * Default maximum width and height of uploaded images in pixels.
+   */
+  public static final int DEFAULT_MAX_DIMENSION = 1920;
+
+  /**
+   * Default JPEG quality of uploaded images.
+   */
+  public static final int DEFAULT_QUALITY = 85;
+
+  private static final String MIME_TYPE_JPEG = "image/jpeg";
+  private static final String MIME_TYPE_PNG = "image/png";
+
+  /**
+   * Size of the buffer for writing the encoded image.
+   */
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private static volatile boolean enabled = true;
+  private static volatile int maxDimension = DEFAULT_MAX_DIMENSION;
+  private static volatile int quality = DEFAULT_QUALITY;
+
+  /**
+   * Enables or disables the preparation. If disabled, all attachments are
+   * uploaded unchanged.
+   *
+   * @param enabled false to upload the original files
+   */
+  public static void setEnabled(boolean enabled) {
+    AttachmentPreparer.enabled = enabled;
+  }
+
+  /**
+   * Sets the maximum width and height of uploaded images.
+   *
+   * @param maxDimension size in pixels, must be positive
+   */
+  public static void setMaxDimension(int maxDimension) {
+    if (maxDimension <= 0) {
+      throw new IllegalArgumentException("maxDimension must be positive");
+    }
+    AttachmentPreparer.maxDimension = maxDimension;
+  }
+
+  /**
+   * Sets the quality JPEG images are encoded with.
+   *
+   * @param quality quality between 0 and 100
+   */
+  public static void setQuality(int quality) {
+    if ((quality < 0) || (quality > 100)) {
+      throw new IllegalArgumentException("quality must be between 0 and 100");
+    }
+    AttachmentPreparer.quality = quality;
+  }
+
+  /**
+   * Prepares the attachments for the upload.
+   *
+   * @param context the context to use
+   * @param attachmentUris the attachments picked by the user
+   * @return list with the URI to upload for each attachment, in the same
+   *         order
+   */
+  public static List<Uri> prepare(Context context, List<Uri> attachmentUris) {
+    List<Uri> result = new ArrayList<Uri>(attachmentUris);
+    if ((!enabled) || (context == null)) {
+      return result;
+    }
+
+    File folder = new File(context.getCacheDir(), Constants.TAG);
+    folder.mkdirs();
+
+    Bitmap reusable = null;
+    for (int i = 0; i < result.size(); i++) {
+      Bitmap[] decoded = new Bitmap[] { reusable };
+      try {
+        Uri prepared = prepare(context, result.get(i), folder, decoded);
+        if (prepared != null) {
+          result.set(i, prepared);
+        }
+      }
+      catch (IOException e) {
+        Log.w(Constants.TAG, "Could not prepare attachment, uploading the original.", e);
+      }
+      catch (OutOfMemoryError e) {
+        Log.w(Constants.TAG, "Could not prepare attachment, uploading the original.", e);
+      }
+
+      if ((reusable != null) && (reusable != decoded[0])) {
+        reusable.recycle();
+      }
+      reusable = decoded[0];
+    }
+
+    if (reusable != null) {
+      reusable.recycle();
+    }
+    return result;
+  }
+
+  /**
+   * Deletes the temporary files created by {@link #prepare(Context, List)}.
+   *
+   * @param attachmentUris the attachments picked by the user
+   * @param preparedUris the list returned by prepare
+   */
+  public static void cleanUp(List<Uri> attachmentUris, List<Uri> preparedUris) {
+    for (Uri uri : preparedUris) {
+      if ((!attachmentUris.contains(uri)) && (ContentResolver.SCHEME_FILE.equals(uri.getScheme()))) {
+        new File(uri.getPath()).delete();
+      }
+    }
+  }
+
+  /**
+   * @param decoded holds a bitmap which may be reused for decoding, is set
+   *                to the decoded bitmap which the caller must recycle
+   * @return URI of the prepared file or null to upload the original
+   */
+  private static Uri prepare(Context context, Uri uri, File folder, Bitmap[] decoded) throws IOException {
+    ContentResolver contentResolver = context.getContentResolver();
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decode(contentResolver, uri, options);
+
+    String mimeType = options.outMimeType;
+    boolean isJPEG = MIME_TYPE_JPEG.equals(mimeType);
+    boolean isPNG = MIME_TYPE_PNG.equals(mimeType);
+    int longSide = Math.max(options.outWidth, options.outHeight);
+    if (((!isJPEG) && (!isPNG)) || (longSide <= 0)) {
+      return null;
+    }
+    if ((isPNG) && (longSide <= maxDimension)) {
+      // Encoding a PNG again doesn't make it smaller
+      return null;
+    }
+
+    // Decode a power of two smaller, but not smaller than the maximum dimension
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = 1;
+    while (longSide / (options.inSampleSize * 2) >= maxDimension) {
+      options.inSampleSize *= 2;
+    }
+    options.inPreferredConfig = (isJPEG ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      setReusableBitmap(options, decoded[0]);
+    }
+
+    Bitmap bitmap;
+    try {
+      bitmap = decode(contentResolver, uri, options);
+    }
+    catch (IllegalArgumentException e) {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+        throw e;
+      }
+
+      // The bitmap couldn't be reused
+      clearReusableBitmap(options);
+      bitmap = decode(contentResolver, uri, options);
+    }
+    if (bitmap == null) {
+      return null;
+    }
+    decoded[0] = bitmap;
+
+    Bitmap scaled = transform(bitmap, getRotation(context, uri));
+    try {
+      File file = File.createTempFile("upload", (isJPEG ? ".jpg" : ".png"), folder);
+      OutputStream output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+      boolean success;
+      try {
+        success = scaled.compress((isJPEG ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG), quality, output);
+      }
+      finally {
+        output.close();
+      }
+
+      long originalSize = getSize(contentResolver, uri);
+      if ((!success) || ((originalSize >= 0) && (file.length() >= originalSize))) {
+        file.delete();
+        return null;
+      }
+      return Uri.fromFile(file);
+    }
+    finally {
+      if (scaled != bitmap) {
+        scaled.recycle();
+      }
+    }
+  }
+
+  private static Bitmap decode(ContentResolver contentResolver, Uri uri, BitmapFactory.Options options) throws IOException {
+    InputStream input = contentResolver.openInputStream(uri);
+    if (input == null) {
+      throw new IOException("Attachment can't be opened: " + uri);
+    }
+
+    try {
+      return BitmapFactory.decodeStream(input, null, options);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void setReusableBitmap(BitmapFactory.Options options, Bitmap reusable) {
+    if ((reusable == null) || (reusable.isRecycled())) {
+      return;
+    }
+
+    // Before KitKat, a bitmap can only be reused for an image of the same size
+    options.inMutable = true;
+    if ((options.inSampleSize == 1) && (reusable.isMutable()) && (reusable.getConfig() == options.inPreferredConfig) &&
+        (reusable.getWidth() == options.outWidth) && (reusable.getHeight() == options.outHeight)) {
+      options.inBitmap = reusable;
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void clearReusableBitmap(BitmapFactory.Options options) {
+    options.inBitmap = null;
+  }
+
+  /**
+   * Scales the bitmap to the maximum dimension and rotates it as given by
+   * the image's orientation, as the orientation gets lost when encoding.
+   */
+  private static Bitmap transform(Bitmap bitmap, int rotation) {
+    int longSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+    float scale = Math.min(1.0f, (float)maxDimension / longSide);
+    if ((scale == 1.0f) && (rotation == 0)) {
+      return bitmap;
+    }
+
+    Matrix matrix = new Matrix();
+    matrix.postScale(scale, scale);
+    matrix.postRotate(rotation);
+    return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+  }
+
+  private static int getRotation(Context context, Uri uri) {
+    try {
+      if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+        ExifInterface exif = new ExifInterface(uri.getPath());
+        switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+          case ExifInterface.ORIENTATION_ROTATE_90:
+            return 90;
+          case ExifInterface.ORIENTATION_ROTATE_180:
+            return 180;
+          case ExifInterface.ORIENTATION_ROTATE_270:
+            return 270;
+          default:
+            return 0;
+        }
+      }
+
+      String[] projection = { MediaStore.Images.ImageColumns.ORIENTATION };
+      Cursor cursor = context.getContentResolver().query(uri, projection, null, null, null);
+      if (cursor != null) {
+        try {
+          if (cursor.moveToFirst()) {
+            return cursor.getInt(0);
+          }
+        }
+        finally {
+          cursor.close();
+        }
+      }
+    }
+    catch (Exception e) {
+      // Not all providers know the orientation
+    }
+    return 0;
+  }
+
+  private static long getSize(ContentResolver contentResolver, Uri uri) {
+    if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+      return new File(uri.getPath()).length();
+    }
+
+    try {
+      AssetFileDescriptor descriptor = contentResolver.openAssetFileDescriptor(uri, "r");
+      if (descriptor != null) {
+        try {
+          return descriptor.getLength();
+        }
+        finally {
+          descriptor.close();
+        }
+      }
+    }
+    catch (IOException e) {
+    }
+    return -1;
+  }
+}
@@ -1,22 +1,61 @@
 package net.hockeyapp.android.utils;
 
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import net.hockeyapp.android.Constants;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h3>Description</h3>
  * 
- * {@link HttpClient} manager class
+ * {@link HttpClient} manager class. All requests of the SDK go through
+ * {@link #execute(HttpUriRequest)}, which uses one pooled client with
+ * keep-alive connections, or the transport set by the app.
  * 
  * <h3>License</h3>
  * 
@@ -48,16 +87,42 @@ import org.apache.http.params.HttpProtocolParams;
  * @author Bogdan Nistor
  */
 public class ConnectionManager {
-  private HttpClient httpClient;
+  /**
+   * User agent of all requests.
+   */
+  public static final String USER_AGENT = "HockeySDK/Android";
+
+  /**
+   * Maximum number of redirects which are followed.
+   */
+  public static final int MAX_REDIRECTS = 6;
+
+  private DefaultHttpClient httpClient;
+  private PoolManager manager;
+  private HttpParams params;
+  private volatile HttpTransport transport;
+  private volatile long keepAliveDuration;
+  private volatile long idleTimeout;
+  private volatile int connectTimeout;
+  private volatile boolean preconnectEnabled;
+  private boolean sessionCacheEnabled = false;
+  private final Set<HttpRoute> preconnectingRoutes = Collections.synchronizedSet(new HashSet<HttpRoute>());
+  private Thread reaper = null;
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong failedRequestCount = new AtomicLong();
+  private final AtomicLong totalResponseTime = new AtomicLong();
   
   /** Private constructor prevents instantiation from other classes */
   private ConnectionManager() {
     /** Sets up parameters */
-    HttpParams params = new BasicHttpParams();
+    params = new BasicHttpParams();
     HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
     HttpProtocolParams.setContentCharset(params, "utf-8");
     params.setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
-    params.setParameter(CoreProtocolPNames.USER_AGENT, "HockeySDK/Android");
+    params.setParameter(CoreProtocolPNames.USER_AGENT, USER_AGENT);
+    HttpClientParams.setRedirecting(params, true);
+    params.setIntParameter(ClientPNames.MAX_REDIRECTS, MAX_REDIRECTS);
   
     //registers schemes for both http and https
     SchemeRegistry registry = new SchemeRegistry();
@@ -66,8 +131,18 @@ public class ConnectionManager {
     sslSocketFactory.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
     registry.register(new Scheme("https", sslSocketFactory, 443));
   
-    ThreadSafeClientConnManager manager = new ThreadSafeClientConnManager(params, registry);
+    applySettings(new ConnectionSettings());
+
+    manager = new PoolManager(params, registry);
     httpClient = new DefaultHttpClient(manager, params);
+    httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        // Respect a shorter keep-alive timeout of the server
+        long duration = super.getKeepAliveDuration(response, context);
+        return (duration > 0 ? Math.min(duration, keepAliveDuration) : keepAliveDuration);
+      }
+    });
   }
 
   /**
@@ -82,7 +157,379 @@ public class ConnectionManager {
     return ConnectionManagerHolder.INSTANCE;
   }
 
+  /**
+   * Configures the connection pool of the default client. Should be called
+   * before the SDK sends its first request, as the maximum number of
+   * connections per host only applies to hosts which were not used yet.
+   * Later changes to the settings object are ignored.
+   *
+   * @param settings the settings or null for the default settings
+   */
+  public synchronized void configure(ConnectionSettings settings) {
+    applySettings(settings != null ? settings : new ConnectionSettings());
+  }
+
+  private void applySettings(ConnectionSettings settings) {
+    HttpConnectionParams.setConnectionTimeout(params, settings.getConnectTimeout());
+    HttpConnectionParams.setSoTimeout(params, settings.getSocketTimeout());
+    ConnManagerParams.setTimeout(params, settings.getPoolTimeout());
+    ConnManagerParams.setMaxTotalConnections(params, settings.getMaxConnections());
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(settings.getMaxConnectionsPerRoute()));
+    keepAliveDuration = settings.getKeepAliveDuration();
+    idleTimeout = settings.getIdleTimeout();
+    connectTimeout = settings.getConnectTimeout();
+    preconnectEnabled = settings.isPreconnectEnabled();
+  }
+
+  /**
+   * Called when a manager is registered. Enables the persistent TLS session
+   * cache and opens a connection to the server, so the first request can
+   * reuse it. Both is done on the network scheduler, as the session cache
+   * reads from disk and connecting blocks.
+   *
+   * @param context the context to use
+   * @param urlString URL of the HockeyApp server
+   */
+  public void prepare(Context context, final String urlString) {
+    final Context appContext = (context != null ? context.getApplicationContext() : null);
+    NetworkScheduler.execute(new Runnable() {
+      public void run() {
+        enableSessionCache(appContext);
+
+        if ((preconnectEnabled) && (transport == null) && (urlString != null)) {
+          preconnect(urlString);
+        }
+      }
+    }, NetworkScheduler.Priority.CRASH);
+  }
+
+  /**
+   * Stores TLS sessions in the cache dir of the app, so connections can
+   * resume a session of an earlier connection or an earlier process
+   * instead of doing a full handshake.
+   */
+  @TargetApi(Build.VERSION_CODES.FROYO)
+  private synchronized void enableSessionCache(Context context) {
+    if ((sessionCacheEnabled) || (context == null) || (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO)) {
+      return;
+    }
+    sessionCacheEnabled = true;
+
+    try {
+      SSLSessionCache sessionCache = new SSLSessionCache(context);
+      SSLSocketFactory sslSocketFactory = SSLCertificateSocketFactory.getHttpSocketFactory(connectTimeout, sessionCache);
+      sslSocketFactory.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+      manager.getSchemeRegistry().register(new Scheme("https", sslSocketFactory, 443));
+    }
+    catch (Exception e) {
+      Log.w(Constants.TAG, "Could not enable the TLS session cache", e);
+    }
+  }
+
+  private void preconnect(String urlString) {
+    HttpRoute route;
+    try {
+      URI uri = URI.create(urlString);
+      HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+      route = httpClient.getRoutePlanner().determineRoute(target, new HttpHead(uri), new BasicHttpContext());
+    }
+    catch (Exception e) {
+      return;
+    }
+
+    if ((manager.getConnectionsInPool(route) > 0) || (!preconnectingRoutes.add(route))) {
+      return;
+    }
+
+    try {
+      openConnection(route);
+    }
+    catch (Exception e) {
+      // The first request will connect again
+    }
+    finally {
+      preconnectingRoutes.remove(route);
+    }
+  }
+
+  /**
+   * Opens a connection for the route and puts it into the pool.
+   */
+  private void openConnection(HttpRoute route) throws Exception {
+    ManagedClientConnection connection = manager.requestConnection(route, null).getConnection(ConnManagerParams.getTimeout(params), TimeUnit.MILLISECONDS);
+    try {
+      if (!connection.isOpen()) {
+        connection.open(route, new BasicHttpContext(), params);
+      }
+      connection.markReusable();
+    }
+    finally {
+      manager.releaseConnection(connection, keepAliveDuration, TimeUnit.MILLISECONDS);
+    }
+    startReaper();
+  }
+
+  /**
+   * Returns the pooled client which is used if no transport was set.
+   *
+   * @return the default client
+   */
   public HttpClient getHttpClient() {
     return httpClient;
   }
+
+  /**
+   * Sets the transport for all requests of the SDK, e.g. to share the
+   * connection pool of the app. The SDK still sets its user agent and
+   * decodes gzip compressed responses.
+   *
+   * @param transport the transport or null to use the default client
+   */
+  public void setTransport(HttpTransport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Executes the request with the transport set by the app or with the
+   * default client. Asks for a gzip compressed response unless the request
+   * sets its own Accept-Encoding header.
+   *
+   * @param request the request to execute
+   * @return the response; its entity must be consumed or closed
+   * @throws IOException if the request fails
+   */
+  public HttpResponse execute(HttpUriRequest request) throws IOException {
+    if (!request.containsHeader("User-Agent")) {
+      request.setHeader("User-Agent", USER_AGENT);
+    }
+    GzipUtils.acceptGzip(request);
+
+    HttpTransport transport = this.transport;
+    long startTime = SystemClock.elapsedRealtime();
+    requestCount.incrementAndGet();
+    try {
+      HttpResponse response;
+      if (transport != null) {
+        response = toHttpResponse(transport.execute(new HttpTransport.Request(request)));
+      }
+      else {
+        response = httpClient.execute(request);
+        startReaper();
+      }
+      totalResponseTime.addAndGet(SystemClock.elapsedRealtime() - startTime);
+      GzipUtils.decodeGzip(response);
+      return response;
+    }
+    catch (IOException e) {
+      failedRequestCount.incrementAndGet();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      failedRequestCount.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Converts the response of a transport set by the app, so the SDK can
+   * handle it like a response of the default client.
+   */
+  private static HttpResponse toHttpResponse(HttpTransport.Response response) throws IOException {
+    if (response == null) {
+      throw new IOException("Transport returned no response");
+    }
+
+    BasicHttpResponse result = new BasicHttpResponse(HttpVersion.HTTP_1_1, response.getStatusCode(), null);
+    for (Map.Entry<String, List<String>> entry : response.getHeaders().entrySet()) {
+      if ((entry.getKey() != null) && (entry.getValue() != null)) {
+        for (String value : entry.getValue()) {
+          result.addHeader(entry.getKey(), value);
+        }
+      }
+    }
+
+    InputStream body = response.getBody();
+    if (body != null) {
+      long length = -1;
+      String contentLength = response.getHeader("Content-Length");
+      if (contentLength != null) {
+        try {
+          length = Long.parseLong(contentLength.trim());
+        }
+        catch (NumberFormatException e) {
+        }
+      }
+
+      InputStreamEntity entity = new InputStreamEntity(body, length);
+      entity.setContentType(response.getHeader("Content-Type"));
+      entity.setContentEncoding(response.getHeader("Content-Encoding"));
+      result.setEntity(entity);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of requests since the start of the process.
+   *
+   * @return number of requests
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Returns the number of requests which failed without a response.
+   *
+   * @return number of failed requests
+   */
+  public long getFailedRequestCount() {
+    return failedRequestCount.get();
+  }
+
+  /**
+   * Returns the total time until the responses were received, without the
+   * time to read their content.
+   *
+   * @return time in milliseconds
+   */
+  public long getTotalResponseTime() {
+    return totalResponseTime.get();
+  }
+
+  /**
+   * Returns the number of open connections of the default client, both in
+   * use and idle.
+   *
+   * @return number of open connections
+   */
+  public int getConnectionsInPool() {
+    return manager.getConnectionsInPool();
+  }
+
+  /**
+   * Returns the number of connections of the default client which are
+   * currently used by a request.
+   *
+   * @return number of connections in use
+   */
+  public int getConnectionsInUse() {
+    return manager.getConnectionsInUse();
+  }
+
+  /**
+   * Returns the total time requests waited for a free connection.
+   *
+   * @return time in milliseconds
+   */
+  public long getTotalPoolWaitTime() {
+    return manager.totalWaitTime.get();
+  }
+
+  /**
+   * Returns the longest time a request waited for a free connection.
+   *
+   * @return time in milliseconds
+   */
+  public long getMaxPoolWaitTime() {
+    return manager.maxWaitTime.get();
+  }
+
+  /**
+   * Starts the thread which closes idle connections, if it doesn't run.
+   * The thread stops when the pool is empty.
+   */
+  private synchronized void startReaper() {
+    if (reaper != null) {
+      return;
+    }
+
+    reaper = new Thread("HockeyApp-ConnectionReaper") {
+      @Override
+      public void run() {
+        while (true) {
+          long timeout = idleTimeout;
+          try {
+            Thread.sleep(timeout / 2);
+          }
+          catch (InterruptedException e) {
+            break;
+          }
+
+          manager.closeExpiredConnections();
+          manager.closeIdleConnections(timeout, TimeUnit.MILLISECONDS);
+          if (stopReaperIfEmpty()) {
+            return;
+          }
+        }
+
+        synchronized (ConnectionManager.this) {
+          reaper = null;
+        }
+      }
+    };
+    reaper.setDaemon(true);
+    reaper.start();
+  }
+
+  private synchronized boolean stopReaperIfEmpty() {
+    if (manager.getConnectionsInPool() == 0) {
+      reaper = null;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Connection manager which measures how long requests wait for a
+   * connection and how many connections are in use.
+   */
+  private static class PoolManager extends ThreadSafeClientConnManager {
+    private final Set<ManagedClientConnection> leased = Collections.synchronizedSet(new HashSet<ManagedClientConnection>());
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    public PoolManager(HttpParams params, SchemeRegistry registry) {
+      super(params, registry);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+      final ClientConnectionRequest request = super.requestConnection(route, state);
+      return new ClientConnectionRequest() {
+        public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+          long startTime = SystemClock.elapsedRealtime();
+          try {
+            ManagedClientConnection connection = request.getConnection(timeout, unit);
+            leased.add(connection);
+            return connection;
+          }
+          finally {
+            addWaitTime(SystemClock.elapsedRealtime() - startTime);
+          }
+        }
+
+        public void abortRequest() {
+          request.abortRequest();
+        }
+      };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit unit) {
+      leased.remove(connection);
+      super.releaseConnection(connection, validDuration, unit);
+    }
+
+    public int getConnectionsInUse() {
+      return leased.size();
+    }
+
+    private void addWaitTime(long waitTime) {
+      totalWaitTime.addAndGet(waitTime);
+      long max = maxWaitTime.get();
+      while ((waitTime > max) && (!maxWaitTime.compareAndSet(max, waitTime))) {
+        max = maxWaitTime.get();
+      }
+    }
+  }
 }
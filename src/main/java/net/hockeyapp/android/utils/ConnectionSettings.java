@@ -0,0 +1,164 @@
+package net.hockeyapp.android.utils;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Settings for the connection pool of {@link ConnectionManager}. Pass an
+ * instance to {@link ConnectionManager#configure(ConnectionSettings)}
+ * before the SDK sends its first request, e.g. in the onCreate method of
+ * your application class.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class ConnectionSettings {
+  public static final int DEFAULT_MAX_CONNECTIONS = 8;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+  public static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+  public static final int DEFAULT_SOCKET_TIMEOUT = 60 * 1000;
+  public static final long DEFAULT_POOL_TIMEOUT = 30 * 1000L;
+  public static final long DEFAULT_KEEP_ALIVE_DURATION = 30 * 1000L;
+  public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000L;
+
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+  private long poolTimeout = DEFAULT_POOL_TIMEOUT;
+  private long keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+  private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private boolean preconnectEnabled = true;
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Sets the maximum number of open connections.
+   *
+   * @param maxConnections number of connections, at least 1
+   */
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = Math.max(1, maxConnections);
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Sets the maximum number of open connections to the same host.
+   *
+   * @param maxConnectionsPerRoute number of connections, at least 1
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Sets the timeout until a connection is established.
+   *
+   * @param connectTimeout timeout in milliseconds, 0 means no timeout
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = Math.max(0, connectTimeout);
+  }
+
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  /**
+   * Sets the timeout while waiting for data from the server.
+   *
+   * @param socketTimeout timeout in milliseconds, 0 means no timeout
+   */
+  public void setSocketTimeout(int socketTimeout) {
+    this.socketTimeout = Math.max(0, socketTimeout);
+  }
+
+  public long getPoolTimeout() {
+    return poolTimeout;
+  }
+
+  /**
+   * Sets how long a request waits for a free connection of the pool.
+   *
+   * @param poolTimeout timeout in milliseconds, 0 means no timeout
+   */
+  public void setPoolTimeout(long poolTimeout) {
+    this.poolTimeout = Math.max(0, poolTimeout);
+  }
+
+  public long getKeepAliveDuration() {
+    return keepAliveDuration;
+  }
+
+  /**
+   * Sets how long a connection is kept for reuse after a request. A
+   * shorter keep-alive timeout sent by the server is respected.
+   *
+   * @param keepAliveDuration duration in milliseconds, 0 closes connections after each request
+   */
+  public void setKeepAliveDuration(long keepAliveDuration) {
+    this.keepAliveDuration = Math.max(0, keepAliveDuration);
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets after which time unused connections are closed by the reaper
+   * thread.
+   *
+   * @param idleTimeout timeout in milliseconds, at least 1 second
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = Math.max(1000, idleTimeout);
+  }
+
+  public boolean isPreconnectEnabled() {
+    return preconnectEnabled;
+  }
+
+  /**
+   * Sets whether a connection to the server is opened in the background
+   * when a manager is registered, so the first request doesn't wait for
+   * the DNS lookup and the TLS handshake.
+   *
+   * @param preconnectEnabled false to open connections only for requests
+   */
+  public void setPreconnectEnabled(boolean preconnectEnabled) {
+    this.preconnectEnabled = preconnectEnabled;
+  }
+}
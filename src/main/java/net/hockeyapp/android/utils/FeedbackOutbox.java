@@ -0,0 +1,438 @@
+package net.hockeyapp.android.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import net.hockeyapp.android.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to keep feedback messages which couldn't be sent
+ * on the device. Each message is stored with copies of its attachments in
+ * a folder named after its idempotency key, so the same message is never
+ * queued twice and the attachments don't have to be picked again. The
+ * messages are sent again in the order they were queued.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class FeedbackOutbox {
+  /**
+   * Name of the outbox folder in the app's files dir.
+   */
+  private static final String FOLDER_NAME = "net.hockeyapp.android.outbox";
+
+  /**
+   * Name of the file with the message in the folder of an item.
+   */
+  private static final String ITEM_FILE_NAME = "item";
+
+  /**
+   * First field of the item file, identifies the file format.
+   */
+  private static final String HEADER_MAGIC = "HockeyFeedbackOutbox";
+
+  /**
+   * Version of the item format, independent of the SDK version so queued
+   * messages survive an update of the SDK. Must be increased if the item
+   * can't be read by an earlier format anymore.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final Comparator<Item> ITEM_ORDER = new Comparator<Item>() {
+    @Override
+    public int compare(Item lhs, Item rhs) {
+      if (lhs.getQueuedAt() != rhs.getQueuedAt()) {
+        return (lhs.getQueuedAt() < rhs.getQueuedAt() ? -1 : 1);
+      }
+      return lhs.getIdempotencyKey().compareTo(rhs.getIdempotencyKey());
+    }
+  };
+
+  /**
+   * Feedback message waiting to be sent.
+   */
+  public static class Item implements Serializable {
+    private static final long serialVersionUID = 3962163394621529358L;
+
+    private final String idempotencyKey;
+    private final long queuedAt;
+    private final String urlString;
+    private final String name;
+    private final String email;
+    private final String subject;
+    private final String text;
+    private final ArrayList<String> attachmentPaths;
+    private int failedAttempts;
+
+    private Item(String idempotencyKey, String urlString, String name, String email, String subject, String text, ArrayList<String> attachmentPaths) {
+      this.idempotencyKey = idempotencyKey;
+      this.queuedAt = System.currentTimeMillis();
+      this.urlString = urlString;
+      this.name = name;
+      this.email = email;
+      this.subject = subject;
+      this.text = text;
+      this.attachmentPaths = attachmentPaths;
+      this.failedAttempts = 0;
+    }
+
+    public String getIdempotencyKey() {
+      return idempotencyKey;
+    }
+
+    public long getQueuedAt() {
+      return queuedAt;
+    }
+
+    public String getUrlString() {
+      return urlString;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public String getSubject() {
+      return subject;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * @return number of attempts which failed because of the connection or the server
+     */
+    public int getFailedAttempts() {
+      return failedAttempts;
+    }
+
+    /**
+     * @return true if all copies of the attachments still exist
+     */
+    public boolean hasAttachments() {
+      for (String path : attachmentPaths) {
+        if (!new File(path).isFile()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return URIs of the copied attachments
+     */
+    public List<Uri> getAttachmentUris() {
+      List<Uri> attachmentUris = new ArrayList<Uri>(attachmentPaths.size());
+      for (String path : attachmentPaths) {
+        attachmentUris.add(Uri.fromFile(new File(path)));
+      }
+      return attachmentUris;
+    }
+  }
+
+  /**
+   * Queues a message. The attachments are copied, so they can still be
+   * sent if the originals are gone. Must be called from a background
+   * thread.
+   *
+   * @param context the context to use
+   * @param idempotencyKey key which is sent with every attempt
+   * @param urlString URL for sending feedback
+   * @param name name of the feedback sender
+   * @param email email of the feedback sender
+   * @param subject message subject
+   * @param text the message
+   * @param attachmentUris attachments of the message, may be null
+   * @return true if the message is in the outbox
+   */
+  public static synchronized boolean enqueue(Context context, String idempotencyKey, String urlString, String name, String email,
+      String subject, String text, List<Uri> attachmentUris) {
+    File folder = getItemFolder(context, idempotencyKey);
+    if (folder == null) {
+      return false;
+    }
+    if (new File(folder, ITEM_FILE_NAME).exists()) {
+      // Queued by an earlier attempt
+      return true;
+    }
+
+    try {
+      ArrayList<String> attachmentPaths = new ArrayList<String>();
+      if (attachmentUris != null) {
+        ContentResolver contentResolver = context.getContentResolver();
+        for (int i = 0; i < attachmentUris.size(); i++) {
+          // Keeps the file name which is sent with the attachment
+          Uri attachmentUri = attachmentUris.get(i);
+          String filename = attachmentUri.getLastPathSegment();
+          File file = new File(new File(folder, String.valueOf(i)), (filename != null ? filename : "attachment"));
+          copy(contentResolver, attachmentUri, file);
+          attachmentPaths.add(file.getAbsolutePath());
+        }
+      }
+
+      Item item = new Item(idempotencyKey, urlString, name, email, subject, text, attachmentPaths);
+      writeItem(new File(folder, ITEM_FILE_NAME), item);
+      return true;
+    }
+    catch (IOException e) {
+      Log.w(Constants.TAG, "Could not queue feedback.", e);
+      deleteRecursively(folder);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the queued messages, the oldest first.
+   *
+   * @param context the context to use
+   * @return list of messages, empty if nothing is queued
+   */
+  public static synchronized List<Item> getItems(Context context) {
+    List<Item> items = new ArrayList<Item>();
+    File[] folders = listItemFolders(context);
+    if (folders == null) {
+      return items;
+    }
+
+    for (File folder : folders) {
+      Item item = readItem(new File(folder, ITEM_FILE_NAME));
+      if (item != null) {
+        items.add(item);
+      }
+      else {
+        // Incomplete or written in an other format
+        deleteRecursively(folder);
+      }
+    }
+
+    Collections.sort(items, ITEM_ORDER);
+    return items;
+  }
+
+  /**
+   * Returns true if no message is queued.
+   *
+   * @param context the context to use
+   * @return true if the outbox is empty
+   */
+  public static synchronized boolean isEmpty(Context context) {
+    File[] folders = listItemFolders(context);
+    return ((folders == null) || (folders.length == 0));
+  }
+
+  /**
+   * Counts a failed attempt to send the message. Must be called from a
+   * background thread.
+   *
+   * @param context the context to use
+   * @param item the message which couldn't be sent
+   */
+  public static synchronized void recordFailedAttempt(Context context, Item item) {
+    File folder = getItemFolder(context, item.getIdempotencyKey());
+    if ((folder == null) || (!folder.exists())) {
+      return;
+    }
+
+    item.failedAttempts++;
+    try {
+      writeItem(new File(folder, ITEM_FILE_NAME), item);
+    }
+    catch (IOException e) {
+      Log.w(Constants.TAG, "Could not update queued feedback.", e);
+    }
+  }
+
+  /**
+   * Removes a message and the copies of its attachments.
+   *
+   * @param context the context to use
+   * @param item the sent message
+   */
+  public static synchronized void remove(Context context, Item item) {
+    File folder = getItemFolder(context, item.getIdempotencyKey());
+    if (folder != null) {
+      deleteRecursively(folder);
+    }
+  }
+
+  private static void copy(ContentResolver contentResolver, Uri uri, File file) throws IOException {
+    File folder = file.getParentFile();
+    if ((!folder.exists()) && (!folder.mkdirs())) {
+      throw new IOException("Folder can't be created: " + folder);
+    }
+
+    InputStream input = contentResolver.openInputStream(uri);
+    if (input == null) {
+      throw new IOException("Attachment can't be opened: " + uri);
+    }
+
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(file);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        output.write(buffer, 0, count);
+      }
+    }
+    finally {
+      closeQuietly(input);
+      closeQuietly(output);
+    }
+  }
+
+  private static void writeItem(File file, Item item) throws IOException {
+    File folder = file.getParentFile();
+    if ((!folder.exists()) && (!folder.mkdirs())) {
+      throw new IOException("Folder can't be created: " + folder);
+    }
+
+    // The item file is renamed into place last, so only complete items are read
+    File tempFile = new File(file.getPath() + ".tmp");
+    ObjectOutputStream output = null;
+    try {
+      output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeUTF(HEADER_MAGIC);
+      output.writeInt(FORMAT_VERSION);
+      output.writeObject(item);
+      output.close();
+      output = null;
+
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Item file can't be renamed: " + file);
+      }
+    }
+    finally {
+      closeQuietly(output);
+      tempFile.delete();
+    }
+  }
+
+  private static Item readItem(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+
+    ObjectInputStream input = null;
+    try {
+      input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if ((!HEADER_MAGIC.equals(input.readUTF())) || (input.readInt() != FORMAT_VERSION)) {
+        return null;
+      }
+      return (Item)input.readObject();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    catch (ClassNotFoundException e) {
+      e.printStackTrace();
+    }
+    catch (ClassCastException e) {
+      e.printStackTrace();
+    }
+    finally {
+      closeQuietly(input);
+    }
+    return null;
+  }
+
+  private static File[] listItemFolders(Context context) {
+    File outbox = getOutboxFolder(context);
+    if ((outbox == null) || (!outbox.exists())) {
+      return null;
+    }
+    return outbox.listFiles();
+  }
+
+  private static File getItemFolder(Context context, String idempotencyKey) {
+    File outbox = getOutboxFolder(context);
+    if ((outbox == null) || (idempotencyKey == null)) {
+      return null;
+    }
+    return new File(outbox, idempotencyKey);
+  }
+
+  private static File getOutboxFolder(Context context) {
+    if (context == null) {
+      return null;
+    }
+
+    File dir = context.getFilesDir();
+    if (dir == null) {
+      return null;
+    }
+    return new File(dir, FOLDER_NAME);
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException e) {
+      }
+    }
+  }
+}
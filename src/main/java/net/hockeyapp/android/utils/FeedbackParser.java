@@ -1,9 +1,19 @@
 package net.hockeyapp.android.utils;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import net.hockeyapp.android.objects.Feedback;
 import net.hockeyapp.android.objects.FeedbackAttachment;
 import net.hockeyapp.android.objects.FeedbackMessage;
@@ -48,6 +58,16 @@ import org.json.JSONObject;
  * @author Bogdan Nistor
  */
 public class FeedbackParser {
+  /**
+   * Format of the dates in the response.
+   */
+  private static final String RESPONSE_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  /**
+   * Format of the dates shown in the feedback activity.
+   */
+  private static final String DISPLAY_DATE_FORMAT = "d MMM h:mm a";
+
   /** Private constructor prevents instantiation from other classes */
   private FeedbackParser() { 
   }
@@ -71,126 +91,353 @@ public class FeedbackParser {
    * @return instance of FeedbackResponse
    */
   public FeedbackResponse parseFeedbackResponse(String feedbackResponseJson) {
+    if (feedbackResponseJson == null) {
+      return null;
+    }
+
+    if (JSONReaderUtils.isSupported()) {
+      return parseFeedbackResponse(new StringReader(feedbackResponseJson));
+    }
+
     FeedbackResponse feedbackResponse = null;
     Feedback feedback = null;
-    if (feedbackResponseJson != null) {
-      try {
-        JSONObject jsonObject = new JSONObject(feedbackResponseJson);
-        
-        JSONObject feedbackObject = jsonObject.getJSONObject("feedback");
-        feedback = new Feedback();
-        
-        /** Parse the Messages Array */
-        JSONArray messagesArray = feedbackObject.getJSONArray("messages");
-        ArrayList<FeedbackMessage> messages = null;
-        
-        FeedbackMessage feedbackMessage = null;
-        if (messagesArray.length() > 0) {
-          messages = new ArrayList<FeedbackMessage>();
-          
-          for (int i = 0; i < messagesArray.length(); i ++) {
-            String subject = messagesArray.getJSONObject(i).getString("subject").toString();
-            String text = messagesArray.getJSONObject(i).getString("text").toString();
-            String oem = messagesArray.getJSONObject(i).getString("oem").toString();
-            String model = messagesArray.getJSONObject(i).getString("model").toString();
-            String osVersion = messagesArray.getJSONObject(i).getString("os_version").toString();
-            String createdAt = messagesArray.getJSONObject(i).getString("created_at").toString();
-            int id = messagesArray.getJSONObject(i).getInt("id");
-            String token = messagesArray.getJSONObject(i).getString("token").toString();
-            int via = messagesArray.getJSONObject(i).getInt("via");
-            String userString = messagesArray.getJSONObject(i).getString("user_string").toString();
-            String cleanText = messagesArray.getJSONObject(i).getString("clean_text").toString();
-            String name = messagesArray.getJSONObject(i).getString("name").toString();
-            String appId = messagesArray.getJSONObject(i).getString("app_id").toString();
-
-            JSONArray jsonAttachments = messagesArray.getJSONObject(i).optJSONArray("attachments");
-            List<FeedbackAttachment> feedbackAttachments = Collections.emptyList();
-            if (jsonAttachments != null) {
-              feedbackAttachments = new ArrayList<FeedbackAttachment>();
-
-              for (int j = 0; j < jsonAttachments.length(); j++) {
-                int attachmentId = jsonAttachments.getJSONObject(j).getInt("id");
-                int attachmentMessageId = jsonAttachments.getJSONObject(j).getInt("feedback_message_id");
-                String filename = jsonAttachments.getJSONObject(j).getString("file_name");
-                String url = jsonAttachments.getJSONObject(j).getString("url");
-                String attachmentCreatedAt = jsonAttachments.getJSONObject(j).getString("created_at");
-                String attachmentUpdatedAt = jsonAttachments.getJSONObject(j).getString("updated_at");
-
-                FeedbackAttachment feedbackAttachment = new FeedbackAttachment();
-                feedbackAttachment.setId(attachmentId);
-                feedbackAttachment.setMessageId(attachmentMessageId);
-                feedbackAttachment.setFilename(filename);
-                feedbackAttachment.setUrl(url);
-                feedbackAttachment.setCreatedAt(attachmentCreatedAt);
-                feedbackAttachment.setUpdatedAt(attachmentUpdatedAt);
-                feedbackAttachments.add(feedbackAttachment);
-              }
-            }
-
-            feedbackMessage = new FeedbackMessage();
-            feedbackMessage.setAppId(appId);
-            feedbackMessage.setCleanText(cleanText);
-            feedbackMessage.setCreatedAt(createdAt);
-            feedbackMessage.setId(id);
-            feedbackMessage.setModel(model);
-            feedbackMessage.setName(name);
-            feedbackMessage.setOem(oem);
-            feedbackMessage.setOsVersion(osVersion);
-            feedbackMessage.setSubjec(subject);
-            feedbackMessage.setText(text);
-            feedbackMessage.setToken(token);
-            feedbackMessage.setUserString(userString);
-            feedbackMessage.setVia(via);
-            feedbackMessage.setFeedbackAttachments(feedbackAttachments);
-            messages.add(feedbackMessage);
-          }
+    try {
+      JSONObject jsonObject = new JSONObject(feedbackResponseJson);
+
+      JSONObject feedbackObject = jsonObject.getJSONObject("feedback");
+      feedback = new Feedback();
+
+      /** Parse the Messages Array */
+      JSONArray messagesArray = feedbackObject.getJSONArray("messages");
+      ArrayList<FeedbackMessage> messages = null;
+
+      if (messagesArray.length() > 0) {
+        messages = new ArrayList<FeedbackMessage>(messagesArray.length());
+
+        DateFormat responseFormat = new SimpleDateFormat(RESPONSE_DATE_FORMAT);
+        DateFormat displayFormat = new SimpleDateFormat(DISPLAY_DATE_FORMAT);
+        for (int i = 0; i < messagesArray.length(); i ++) {
+          FeedbackMessage message = parseMessage(messagesArray.getJSONObject(i));
+          message.setDisplayDate(formatDate(message.getCreatedAt(), responseFormat, displayFormat));
+          messages.add(message);
         }
-        
-        feedback.setMessages(messages);
-        
-        try {
-          feedback.setName(feedbackObject.getString("name").toString());
-        } catch (JSONException e) {
-          e.printStackTrace();
+      }
+
+      feedback.setMessages(messages);
+
+      try {
+        feedback.setName(feedbackObject.getString("name"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+
+      try {
+        feedback.setEmail(feedbackObject.getString("email"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+
+      try {
+        feedback.setId(feedbackObject.getInt("id"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+
+      try {
+        feedback.setCreatedAt(feedbackObject.getString("created_at"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+
+      feedbackResponse = new FeedbackResponse();
+      feedbackResponse.setFeedback(feedback);
+      try {
+        feedbackResponse.setStatus(jsonObject.getString("status"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+
+      try {
+        feedbackResponse.setToken(jsonObject.getString("token"));
+      } catch (JSONException e) {
+        e.printStackTrace();
+      }
+    } catch (JSONException e) {
+      e.printStackTrace();
+    }
+
+    return feedbackResponse;
+  }
+
+  /**
+   * Parses the JSON response in one pass, without building a JSONObject
+   * first. Each value is read once and set directly on the messages and
+   * attachments.
+   *
+   * @param input reader for the JSON response, is not closed
+   * @return instance of FeedbackResponse or null if the response is invalid
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  public FeedbackResponse parseFeedbackResponse(Reader input) {
+    FeedbackResponse feedbackResponse = new FeedbackResponse();
+    try {
+      JsonReader reader = new JsonReader(input);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("feedback")) {
+          feedbackResponse.setFeedback(readFeedback(reader));
         }
-    
-        try {
-          feedback.setEmail(feedbackObject.getString("email").toString());
-        } catch (JSONException e) {
-          e.printStackTrace();
+        else if (name.equals("status")) {
+          feedbackResponse.setStatus(readString(reader));
         }
-    
-        try {
-          feedback.setId(feedbackObject.getInt("id"));
-        } catch (JSONException e) {
-          e.printStackTrace();
+        else if (name.equals("token")) {
+          feedbackResponse.setToken(readString(reader));
         }
-    
-        try {
-          feedback.setCreatedAt(feedbackObject.getString("created_at").toString());
-        } catch (JSONException e) {
-          e.printStackTrace();
+        else {
+          reader.skipValue();
         }
-        
-        feedbackResponse = new FeedbackResponse();
-        feedbackResponse.setFeedback(feedback);
-        try {
-          feedbackResponse.setStatus(jsonObject.getString("status").toString());
-        } catch (JSONException e) {
-          e.printStackTrace();
+      }
+      reader.endObject();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+    catch (IllegalStateException e) {
+      // Value of an unexpected type
+      e.printStackTrace();
+      return null;
+    }
+    catch (NumberFormatException e) {
+      e.printStackTrace();
+      return null;
+    }
+
+    return (feedbackResponse.getFeedback() != null ? feedbackResponse : null);
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private Feedback readFeedback(JsonReader reader) throws IOException {
+    Feedback feedback = new Feedback();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("messages")) {
+        ArrayList<FeedbackMessage> messages = new ArrayList<FeedbackMessage>();
+        DateFormat responseFormat = new SimpleDateFormat(RESPONSE_DATE_FORMAT);
+        DateFormat displayFormat = new SimpleDateFormat(DISPLAY_DATE_FORMAT);
+        reader.beginArray();
+        while (reader.hasNext()) {
+          FeedbackMessage message = readMessage(reader);
+          message.setDisplayDate(formatDate(message.getCreatedAt(), responseFormat, displayFormat));
+          messages.add(message);
         }
-        
-    
-        try {
-          feedbackResponse.setToken(jsonObject.getString("token").toString());
-        } catch (JSONException e) {
-          e.printStackTrace();
+        reader.endArray();
+        feedback.setMessages(messages.isEmpty() ? null : messages);
+      }
+      else if (name.equals("name")) {
+        feedback.setName(readString(reader));
+      }
+      else if (name.equals("email")) {
+        feedback.setEmail(readString(reader));
+      }
+      else if (name.equals("id")) {
+        feedback.setId(reader.nextInt());
+      }
+      else if (name.equals("created_at")) {
+        feedback.setCreatedAt(readString(reader));
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return feedback;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private FeedbackMessage readMessage(JsonReader reader) throws IOException {
+    FeedbackMessage feedbackMessage = new FeedbackMessage();
+    List<FeedbackAttachment> feedbackAttachments = Collections.emptyList();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("subject")) {
+        feedbackMessage.setSubjec(readString(reader));
+      }
+      else if (name.equals("text")) {
+        feedbackMessage.setText(readString(reader));
+      }
+      else if (name.equals("oem")) {
+        feedbackMessage.setOem(readString(reader));
+      }
+      else if (name.equals("model")) {
+        feedbackMessage.setModel(readString(reader));
+      }
+      else if (name.equals("os_version")) {
+        feedbackMessage.setOsVersion(readString(reader));
+      }
+      else if (name.equals("created_at")) {
+        feedbackMessage.setCreatedAt(readString(reader));
+      }
+      else if (name.equals("id")) {
+        feedbackMessage.setId(reader.nextInt());
+      }
+      else if (name.equals("token")) {
+        feedbackMessage.setToken(readString(reader));
+      }
+      else if (name.equals("via")) {
+        feedbackMessage.setVia(reader.nextInt());
+      }
+      else if (name.equals("user_string")) {
+        feedbackMessage.setUserString(readString(reader));
+      }
+      else if (name.equals("clean_text")) {
+        feedbackMessage.setCleanText(readString(reader));
+      }
+      else if (name.equals("name")) {
+        feedbackMessage.setName(readString(reader));
+      }
+      else if (name.equals("app_id")) {
+        feedbackMessage.setAppId(readString(reader));
+      }
+      else if ((name.equals("attachments")) && (reader.peek() == JsonToken.BEGIN_ARRAY)) {
+        feedbackAttachments = new ArrayList<FeedbackAttachment>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          feedbackAttachments.add(readAttachment(reader));
         }
-      } catch (JSONException e) {
-        e.printStackTrace();
+        reader.endArray();
+      }
+      else {
+        reader.skipValue();
       }
     }
-    
-    return feedbackResponse;
+    reader.endObject();
+
+    feedbackMessage.setFeedbackAttachments(feedbackAttachments);
+    return feedbackMessage;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private FeedbackAttachment readAttachment(JsonReader reader) throws IOException {
+    FeedbackAttachment feedbackAttachment = new FeedbackAttachment();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("id")) {
+        feedbackAttachment.setId(reader.nextInt());
+      }
+      else if (name.equals("feedback_message_id")) {
+        feedbackAttachment.setMessageId(reader.nextInt());
+      }
+      else if (name.equals("file_name")) {
+        feedbackAttachment.setFilename(readString(reader));
+      }
+      else if (name.equals("url")) {
+        feedbackAttachment.setUrl(readString(reader));
+      }
+      else if (name.equals("created_at")) {
+        feedbackAttachment.setCreatedAt(readString(reader));
+      }
+      else if (name.equals("updated_at")) {
+        feedbackAttachment.setUpdatedAt(readString(reader));
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return feedbackAttachment;
+  }
+
+  /**
+   * Reads a string like JSONObject.getString(), which returns "null" for
+   * null values.
+   */
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private String readString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return "null";
+    }
+    if (reader.peek() == JsonToken.BOOLEAN) {
+      return String.valueOf(reader.nextBoolean());
+    }
+    return reader.nextString();
+  }
+
+  private FeedbackMessage parseMessage(JSONObject messageObject) throws JSONException {
+    FeedbackMessage feedbackMessage = new FeedbackMessage();
+    feedbackMessage.setAppId(messageObject.getString("app_id"));
+    feedbackMessage.setCleanText(messageObject.getString("clean_text"));
+    feedbackMessage.setCreatedAt(messageObject.getString("created_at"));
+    feedbackMessage.setId(messageObject.getInt("id"));
+    feedbackMessage.setModel(messageObject.getString("model"));
+    feedbackMessage.setName(messageObject.getString("name"));
+    feedbackMessage.setOem(messageObject.getString("oem"));
+    feedbackMessage.setOsVersion(messageObject.getString("os_version"));
+    feedbackMessage.setSubjec(messageObject.getString("subject"));
+    feedbackMessage.setText(messageObject.getString("text"));
+    feedbackMessage.setToken(messageObject.getString("token"));
+    feedbackMessage.setUserString(messageObject.getString("user_string"));
+    feedbackMessage.setVia(messageObject.getInt("via"));
+
+    JSONArray jsonAttachments = messageObject.optJSONArray("attachments");
+    List<FeedbackAttachment> feedbackAttachments = Collections.emptyList();
+    if (jsonAttachments != null) {
+      feedbackAttachments = new ArrayList<FeedbackAttachment>(jsonAttachments.length());
+
+      for (int j = 0; j < jsonAttachments.length(); j++) {
+        JSONObject attachmentObject = jsonAttachments.getJSONObject(j);
+
+        FeedbackAttachment feedbackAttachment = new FeedbackAttachment();
+        feedbackAttachment.setId(attachmentObject.getInt("id"));
+        feedbackAttachment.setMessageId(attachmentObject.getInt("feedback_message_id"));
+        feedbackAttachment.setFilename(attachmentObject.getString("file_name"));
+        feedbackAttachment.setUrl(attachmentObject.getString("url"));
+        feedbackAttachment.setCreatedAt(attachmentObject.getString("created_at"));
+        feedbackAttachment.setUpdatedAt(attachmentObject.getString("updated_at"));
+        feedbackAttachments.add(feedbackAttachment);
+      }
+    }
+
+    feedbackMessage.setFeedbackAttachments(feedbackAttachments);
+    return feedbackMessage;
+  }
+
+  /**
+   * Sets the display date of the messages, e.g. "3 Mar 4:05 PM". Messages
+   * get their display date while they are parsed, this is only needed for
+   * messages which were loaded from the store. Call it off the UI thread.
+   *
+   * @param messages the messages, may be null
+   */
+  public static void formatDisplayDates(List<FeedbackMessage> messages) {
+    if (messages == null) {
+      return;
+    }
+
+    DateFormat responseFormat = new SimpleDateFormat(RESPONSE_DATE_FORMAT);
+    DateFormat displayFormat = new SimpleDateFormat(DISPLAY_DATE_FORMAT);
+    for (FeedbackMessage message : messages) {
+      message.setDisplayDate(formatDate(message.getCreatedAt(), responseFormat, displayFormat));
+    }
+  }
+
+  private static String formatDate(String createdAt, DateFormat responseFormat, DateFormat displayFormat) {
+    if (createdAt == null) {
+      return null;
+    }
+
+    try {
+      return displayFormat.format(responseFormat.parse(createdAt));
+    }
+    catch (ParseException e) {
+      e.printStackTrace();
+      return null;
+    }
   }
 }
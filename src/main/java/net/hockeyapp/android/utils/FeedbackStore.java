@@ -0,0 +1,303 @@
+package net.hockeyapp.android.utils;
+
+import android.content.Context;
+import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.objects.Feedback;
+import net.hockeyapp.android.objects.FeedbackMessage;
+import net.hockeyapp.android.objects.FeedbackResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to keep the messages of the feedback thread on the
+ * device. The stored thread is shown right away when the feedback activity
+ * is opened, afterwards only the messages which are newer than the last
+ * stored message are fetched and merged into the store.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class FeedbackStore {
+  /**
+   * Name of the store file in the app's files dir.
+   */
+  private static final String FILE_NAME = "net.hockeyapp.android.feedback";
+
+  /**
+   * First field of the header, identifies the file format.
+   */
+  private static final String HEADER_MAGIC = "HockeyFeedbackStore";
+
+  private static final Comparator<FeedbackMessage> MESSAGE_ORDER = new Comparator<FeedbackMessage>() {
+    @Override
+    public int compare(FeedbackMessage lhs, FeedbackMessage rhs) {
+      return (lhs.getId() < rhs.getId() ? -1 : (lhs.getId() == rhs.getId() ? 0 : 1));
+    }
+  };
+
+  /**
+   * Returns the stored thread for the given token. A thread written by an
+   * other SDK version or for an other token is ignored.
+   *
+   * @param context the context to use
+   * @param token token of the feedback thread
+   * @return the stored thread or null if nothing is stored
+   */
+  public static synchronized FeedbackResponse getFeedbackResponse(Context context, String token) {
+    File file = getFile(context);
+    if ((file == null) || (token == null) || (!file.exists())) {
+      return null;
+    }
+
+    ObjectInputStream input = null;
+    try {
+      input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if ((!readHeader(input, token)) || (input.readInt() < 0)) {
+        return null;
+      }
+
+      // The display date isn't stored, so format it here instead of in the UI
+      FeedbackResponse response = (FeedbackResponse)input.readObject();
+      if (response.getFeedback() != null) {
+        FeedbackParser.formatDisplayDates(response.getFeedback().getMessages());
+      }
+      return response;
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    catch (ClassNotFoundException e) {
+      e.printStackTrace();
+    }
+    catch (ClassCastException e) {
+      e.printStackTrace();
+    }
+    finally {
+      closeQuietly(input);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the id of the newest stored message, without reading the whole
+   * thread.
+   *
+   * @param context the context to use
+   * @param token token of the feedback thread
+   * @return the message id or -1 if nothing is stored
+   */
+  public static synchronized int getLastMessageId(Context context, String token) {
+    File file = getFile(context);
+    if ((file == null) || (token == null) || (!file.exists())) {
+      return -1;
+    }
+
+    ObjectInputStream input = null;
+    try {
+      input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (readHeader(input, token)) {
+        return input.readInt();
+      }
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    finally {
+      closeQuietly(input);
+    }
+    return -1;
+  }
+
+  /**
+   * Merges the messages of a response into the store. If the response was
+   * fetched with a last message id, it contains only the newer messages and
+   * is merged with the stored thread, otherwise it replaces the stored
+   * thread.
+   *
+   * @param context the context to use
+   * @param response the parsed response
+   * @param lastMessageId the last message id sent with the request or -1
+   * @return the complete thread, or the response itself if it has no new
+   *         messages or could not be merged
+   */
+  public static synchronized FeedbackResponse merge(Context context, FeedbackResponse response, int lastMessageId) {
+    if ((response == null) || (response.getToken() == null) || (response.getFeedback() == null) || (!"success".equalsIgnoreCase(response.getStatus()))) {
+      return response;
+    }
+
+    FeedbackResponse merged = response;
+    if (lastMessageId != -1) {
+      if (getLastMessageId(response) <= lastMessageId) {
+        // Nothing new, the stored thread is still complete
+        return response;
+      }
+
+      FeedbackResponse stored = getFeedbackResponse(context, response.getToken());
+      if ((stored == null) || (stored.getFeedback() == null) || (getLastMessageId(stored) < lastMessageId)) {
+        // The response starts after the stored thread, there would be a gap
+        return response;
+      }
+
+      merged = stored;
+      merged.setStatus(response.getStatus());
+      merged.getFeedback().setMessages(mergeMessages(stored.getFeedback().getMessages(), response.getFeedback().getMessages()));
+    }
+    else {
+      ArrayList<FeedbackMessage> messages = merged.getFeedback().getMessages();
+      if (messages != null) {
+        Collections.sort(messages, MESSAGE_ORDER);
+      }
+    }
+
+    save(context, merged);
+    return merged;
+  }
+
+  /**
+   * Deletes the stored thread, e.g. if the token is no longer valid.
+   *
+   * @param context the context to use
+   */
+  public static synchronized void clear(Context context) {
+    File file = getFile(context);
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns the id of the newest message in the response.
+   *
+   * @param response the response
+   * @return the message id or -1 if the response has no messages
+   */
+  public static int getLastMessageId(FeedbackResponse response) {
+    int lastMessageId = -1;
+    Feedback feedback = (response != null ? response.getFeedback() : null);
+    if ((feedback != null) && (feedback.getMessages() != null)) {
+      for (FeedbackMessage message : feedback.getMessages()) {
+        lastMessageId = Math.max(lastMessageId, message.getId());
+      }
+    }
+    return lastMessageId;
+  }
+
+  private static ArrayList<FeedbackMessage> mergeMessages(ArrayList<FeedbackMessage> stored, ArrayList<FeedbackMessage> received) {
+    ArrayList<FeedbackMessage> messages = new ArrayList<FeedbackMessage>();
+    Set<Integer> ids = new HashSet<Integer>();
+    if (stored != null) {
+      for (FeedbackMessage message : stored) {
+        if (ids.add(message.getId())) {
+          messages.add(message);
+        }
+      }
+    }
+    if (received != null) {
+      for (FeedbackMessage message : received) {
+        if (ids.add(message.getId())) {
+          messages.add(message);
+        }
+      }
+    }
+
+    Collections.sort(messages, MESSAGE_ORDER);
+    return (messages.isEmpty() ? null : messages);
+  }
+
+  private static void save(Context context, FeedbackResponse response) {
+    File file = getFile(context);
+    if (file == null) {
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    ObjectOutputStream output = null;
+    try {
+      output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeUTF(HEADER_MAGIC);
+      output.writeUTF(Constants.SDK_VERSION);
+      output.writeUTF(response.getToken());
+      output.writeInt(getLastMessageId(response));
+      output.writeObject(response);
+      output.close();
+      output = null;
+
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+      }
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      tempFile.delete();
+    }
+    finally {
+      closeQuietly(output);
+    }
+  }
+
+  private static boolean readHeader(ObjectInputStream input, String token) throws IOException {
+    return ((HEADER_MAGIC.equals(input.readUTF())) && (Constants.SDK_VERSION.equals(input.readUTF())) && (token.equals(input.readUTF())));
+  }
+
+  private static File getFile(Context context) {
+    if (context == null) {
+      return null;
+    }
+
+    File dir = context.getFilesDir();
+    if (dir == null) {
+      return null;
+    }
+    return new File(dir, FILE_NAME);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException e) {
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package net.hockeyapp.android.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to request gzip compressed responses and to
+ * decode them while they are read. The response is decoded as a stream
+ * with a fixed buffer, so memory use doesn't grow with the response.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class GzipUtils {
+  private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String ENCODING_GZIP = "gzip";
+
+  /**
+   * Size of the buffer for the compressed data.
+   */
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  /**
+   * Asks the server for a gzip compressed response, unless the request
+   * already sets an Accept-Encoding header.
+   *
+   * @param request the request which is not executed yet
+   */
+  public static void acceptGzip(HttpRequest request) {
+    if (!request.containsHeader(HEADER_ACCEPT_ENCODING)) {
+      request.addHeader(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+    }
+  }
+
+  /**
+   * Replaces a gzip compressed entity of the response with an entity which
+   * decodes the content while it is read, so callers read it like before.
+   *
+   * @param response the response
+   */
+  public static void decodeGzip(HttpResponse response) {
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      Header encoding = entity.getContentEncoding();
+      if ((encoding != null) && (isGzip(encoding.getValue()))) {
+        response.setEntity(new GzipDecompressingEntity(entity));
+      }
+    }
+  }
+
+  private static boolean isGzip(String contentEncoding) {
+    return ((contentEncoding != null) && (contentEncoding.trim().equalsIgnoreCase(ENCODING_GZIP)));
+  }
+
+  /**
+   * Entity which decodes the content of a gzip compressed entity.
+   */
+  private static class GzipDecompressingEntity extends HttpEntityWrapper {
+    public GzipDecompressingEntity(HttpEntity entity) {
+      super(entity);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new GZIPInputStream(wrappedEntity.getContent(), BUFFER_SIZE);
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+      InputStream inputStream = getContent();
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+          outputStream.write(buffer, 0, count);
+        }
+      }
+      finally {
+        inputStream.close();
+      }
+    }
+
+    @Override
+    public long getContentLength() {
+      // The length of the decoded content is not known
+      return -1;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+      return null;
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return true;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return false;
+    }
+  }
+}
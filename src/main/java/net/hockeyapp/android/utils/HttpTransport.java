@@ -0,0 +1,197 @@
+package net.hockeyapp.android.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Transport for all HTTP requests of the SDK. The default transport is
+ * the pooled client of {@link ConnectionManager}. Apps which already use
+ * their own HTTP client can set an implementation with
+ * {@link ConnectionManager#setTransport(HttpTransport)}. Requests and
+ * responses are described with the SDK's own types, so implementations
+ * don't depend on a specific HTTP library.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public interface HttpTransport {
+  /**
+   * Executes the request. Redirects must be followed. The caller closes
+   * the body of the response.
+   *
+   * @param request the request to execute
+   * @return the response
+   * @throws IOException if the request fails
+   */
+  public Response execute(Request request) throws IOException;
+
+  /**
+   * Request of the SDK. Instances are only created by the SDK.
+   */
+  public static final class Request {
+    private final HttpUriRequest request;
+    private final HttpEntity entity;
+    private final Map<String, List<String>> headers;
+
+    Request(HttpUriRequest request) {
+      this.request = request;
+      this.entity = (request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null);
+      this.headers = toMap(request.getAllHeaders());
+    }
+
+    /**
+     * @return the method, e.g. "GET" or "POST"
+     */
+    public String getMethod() {
+      return request.getMethod();
+    }
+
+    /**
+     * @return the absolute URL
+     */
+    public String getUrl() {
+      return request.getURI().toString();
+    }
+
+    /**
+     * @return the headers by name, including User-Agent and Accept-Encoding
+     */
+    public Map<String, List<String>> getHeaders() {
+      return headers;
+    }
+
+    /**
+     * @return true if the request has a body
+     */
+    public boolean hasBody() {
+      return (entity != null);
+    }
+
+    /**
+     * @return the content type of the body or null
+     */
+    public String getContentType() {
+      Header header = (entity != null ? entity.getContentType() : null);
+      return (header != null ? header.getValue() : null);
+    }
+
+    /**
+     * @return the length of the body or -1 if unknown
+     */
+    public long getContentLength() {
+      return (entity != null ? entity.getContentLength() : -1);
+    }
+
+    /**
+     * Writes the body to the given stream. Does nothing if the request has
+     * no body.
+     *
+     * @param output the stream to write to
+     * @throws IOException if the body couldn't be written
+     */
+    public void writeBody(OutputStream output) throws IOException {
+      if (entity != null) {
+        entity.writeTo(output);
+      }
+    }
+
+    private static Map<String, List<String>> toMap(Header[] headers) {
+      Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+      for (Header header : headers) {
+        List<String> values = map.get(header.getName());
+        if (values == null) {
+          values = new ArrayList<String>(1);
+          map.put(header.getName(), values);
+        }
+        values.add(header.getValue());
+      }
+      return Collections.unmodifiableMap(map);
+    }
+  }
+
+  /**
+   * Response to a request of the SDK, created by the transport.
+   */
+  public static final class Response {
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+
+    /**
+     * @param statusCode the HTTP status code
+     * @param headers the headers by name, may be null
+     * @param body the body or null if the response has none
+     */
+    public Response(int statusCode, Map<String, List<String>> headers, InputStream body) {
+      this.statusCode = statusCode;
+      this.headers = (headers != null ? headers : Collections.<String, List<String>>emptyMap());
+      this.body = body;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+      return headers;
+    }
+
+    /**
+     * Returns the first value of the header with the given name. The name
+     * is compared ignoring case.
+     *
+     * @param name the name of the header
+     * @return the value or null if the header is missing
+     */
+    public String getHeader(String name) {
+      for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+        if ((name.equalsIgnoreCase(entry.getKey())) && (entry.getValue() != null) && (!entry.getValue().isEmpty())) {
+          return entry.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
+    public InputStream getBody() {
+      return body;
+    }
+  }
+}
@@ -181,7 +181,7 @@ public class ImageUtils {
    * @param reqHeight required width
    * @return the scale factor
    */
-  private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+  static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
     // Raw height and width of image
     final int height = options.outHeight;
     final int width = options.outWidth;
@@ -0,0 +1,152 @@
+package net.hockeyapp.android.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to read single values from a {@link JsonReader}
+ * into org.json objects, so streamed responses can be processed entry by
+ * entry instead of parsing the whole response at once. Requires Android
+ * 3.0 or later.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class JSONReaderUtils {
+
+  /**
+   * Returns true if {@link JsonReader} is available on this device.
+   *
+   * @return true if streaming JSON is supported
+   */
+  public static boolean isSupported() {
+    return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB);
+  }
+
+  /**
+   * Reads the next object from the reader.
+   *
+   * @param reader a reader positioned before an object
+   * @return the object
+   * @throws IOException if reading fails
+   * @throws JSONException if the object contains invalid values
+   */
+  public static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+    return readObject(reader, null);
+  }
+
+  /**
+   * Reads the next object from the reader and keeps only the given keys.
+   * All other values are skipped without being parsed.
+   *
+   * @param reader a reader positioned before an object
+   * @param keys keys to keep or null to keep all keys
+   * @return the object
+   * @throws IOException if reading fails
+   * @throws JSONException if the object contains invalid values
+   */
+  public static JSONObject readObject(JsonReader reader, Set<String> keys) throws IOException, JSONException {
+    JSONObject object = new JSONObject();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ((keys == null) || (keys.contains(name))) {
+        object.put(name, readValue(reader));
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return object;
+  }
+
+  /**
+   * Reads the next array from the reader.
+   *
+   * @param reader a reader positioned before an array
+   * @return the array
+   * @throws IOException if reading fails
+   * @throws JSONException if the array contains invalid values
+   */
+  public static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+    JSONArray array = new JSONArray();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      array.put(readValue(reader));
+    }
+    reader.endArray();
+    return array;
+  }
+
+  /**
+   * Reads the next value of any type from the reader.
+   *
+   * @param reader a reader positioned before a value
+   * @return JSONObject, JSONArray, String, Boolean, Long, Double or JSONObject.NULL
+   * @throws IOException if reading fails
+   * @throws JSONException if the value is invalid
+   */
+  public static Object readValue(JsonReader reader) throws IOException, JSONException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        return readObject(reader);
+      case BEGIN_ARRAY:
+        return readArray(reader);
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return JSONObject.NULL;
+      case NUMBER:
+        return parseNumber(reader.nextString());
+      default:
+        return reader.nextString();
+    }
+  }
+
+  private static Object parseNumber(String value) {
+    try {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException e) {
+      return Double.parseDouble(value);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package net.hockeyapp.android.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Runs the background work of the SDK on its own small thread pool, so
+ * it doesn't compete with the app for the threads of AsyncTask. Waiting
+ * work is started by priority and in the order of submission within the
+ * same priority. Optionally, work which is not urgent is held back for a
+ * while after the app started.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class NetworkScheduler {
+  /**
+   * Priorities from the most to the least urgent work.
+   */
+  public enum Priority {
+    CRASH(false),
+    LOGIN(false),
+    UPDATE_CHECK(true),
+    FEEDBACK(true),
+    ATTACHMENT(false);
+
+    private final boolean deferrable;
+
+    private Priority(boolean deferrable) {
+      this.deferrable = deferrable;
+    }
+
+    /**
+     * Returns true if the work may wait until the startup delay passed.
+     */
+    public boolean isDeferrable() {
+      return deferrable;
+    }
+  }
+
+  /**
+   * Default maximum number of tasks which run at the same time.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_TASKS = 2;
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final AtomicLong sequence = new AtomicLong();
+  private static final long startTime = SystemClock.elapsedRealtime();
+  private static volatile long startupDelay = 0;
+
+  private static final ThreadPoolExecutor pool;
+
+  static {
+    pool = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_TASKS, DEFAULT_MAX_CONCURRENT_TASKS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+              public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+              }
+            }, "HockeyApp-Network-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+      allowCoreThreadTimeOut();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+  private static void allowCoreThreadTimeOut() {
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Sets the maximum number of tasks of the SDK which run at the same time.
+   *
+   * @param maxConcurrentTasks number of tasks, at least 1
+   */
+  public static synchronized void setMaxConcurrentTasks(int maxConcurrentTasks) {
+    int size = Math.max(1, maxConcurrentTasks);
+    if (size > pool.getMaximumPoolSize()) {
+      pool.setMaximumPoolSize(size);
+      pool.setCorePoolSize(size);
+    }
+    else {
+      pool.setCorePoolSize(size);
+      pool.setMaximumPoolSize(size);
+    }
+  }
+
+  /**
+   * Holds back deferrable work, e.g. background update checks, until the
+   * given time after the SDK was loaded, so the app can draw its first
+   * frames without competing for network and CPU.
+   *
+   * @param delay delay in milliseconds, 0 to start work immediately
+   */
+  public static void setStartupDelay(long delay) {
+    startupDelay = Math.max(0, delay);
+  }
+
+  /**
+   * Runs the work on the thread pool of the SDK.
+   *
+   * @param runnable the work
+   * @param priority priority of the work
+   */
+  public static void execute(Runnable runnable, Priority priority) {
+    final PrioritizedRunnable prioritized = new PrioritizedRunnable(runnable, priority, sequence.getAndIncrement());
+
+    long remainingDelay = startTime + startupDelay - SystemClock.elapsedRealtime();
+    if ((priority.isDeferrable()) && (remainingDelay > 0)) {
+      new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+        public void run() {
+          pool.execute(prioritized);
+        }
+      }, remainingDelay);
+    }
+    else {
+      pool.execute(prioritized);
+    }
+  }
+
+  /**
+   * Returns an executor which runs all work with the given priority.
+   *
+   * @param priority priority of the work
+   * @return the executor
+   */
+  public static Executor getExecutor(final Priority priority) {
+    return new Executor() {
+      public void execute(Runnable runnable) {
+        NetworkScheduler.execute(runnable, priority);
+      }
+    };
+  }
+
+  /**
+   * Returns the number of tasks which wait for a free thread.
+   *
+   * @return number of waiting tasks
+   */
+  public static int getQueueSize() {
+    return pool.getQueue().size();
+  }
+
+  private static class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+    private final Runnable runnable;
+    private final Priority priority;
+    private final long sequence;
+
+    public PrioritizedRunnable(Runnable runnable, Priority priority, long sequence) {
+      this.runnable = runnable;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    public void run() {
+      runnable.run();
+    }
+
+    public int compareTo(PrioritizedRunnable other) {
+      if (priority != other.priority) {
+        return priority.compareTo(other.priority);
+      }
+      return (sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0));
+    }
+  }
+}
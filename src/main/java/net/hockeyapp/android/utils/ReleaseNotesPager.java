@@ -0,0 +1,144 @@
+package net.hockeyapp.android.utils;
+
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.Strings;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Loads the release notes into a web view page by page. The newest
+ * version is shown first, older versions are added when the user taps
+ * the link at the end of the page. JavaScript stays disabled, the page is
+ * rendered again with more versions and scrolled back to where it was.
+ * The instance can be kept across configuration changes and attached to
+ * a new web view; versions which were already shown are then taken from
+ * the cache of the VersionHelper.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class ReleaseNotesPager extends WebViewClient {
+  /**
+   * Number of versions shown initially.
+   */
+  private static final int FIRST_PAGE_SIZE = 1;
+
+  /**
+   * Number of versions added for each page.
+   */
+  private static final int PAGE_SIZE = 5;
+
+  /**
+   * URL of the link which shows more versions.
+   */
+  private static final String MORE_URL = "hockeyapp:more";
+
+  private final VersionHelper versionHelper;
+  private final boolean showRestore;
+  private int loadedCount;
+  private int restoreScrollY;
+  private WebView webView;
+
+  public ReleaseNotesPager(VersionHelper versionHelper, boolean showRestore) {
+    this.versionHelper = versionHelper;
+    this.showRestore = showRestore;
+    this.loadedCount = FIRST_PAGE_SIZE;
+    this.restoreScrollY = 0;
+  }
+
+  /**
+   * Loads all versions shown so far into the given web view.
+   *
+   * @param webView the web view for the release notes
+   */
+  public void attach(WebView webView) {
+    this.webView = webView;
+
+    webView.setWebViewClient(this);
+    render(webView);
+  }
+
+  /**
+   * Releases the web view, e.g. before the activity is re-created.
+   */
+  public void detach() {
+    if (webView != null) {
+      webView.setWebViewClient(null);
+      webView = null;
+    }
+  }
+
+  @Override
+  public boolean shouldOverrideUrlLoading(WebView view, String url) {
+    if ((url != null) && (url.startsWith(MORE_URL))) {
+      restoreScrollY = view.getScrollY();
+      loadedCount += PAGE_SIZE;
+      render(view);
+      return true;
+    }
+
+    // Open all other links outside of the release notes like before
+    try {
+      Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+      view.getContext().startActivity(intent);
+    }
+    catch (ActivityNotFoundException e) {
+      // Ignore links which can't be handled
+    }
+    return true;
+  }
+
+  @Override
+  public void onPageFinished(WebView view, String url) {
+    if (restoreScrollY > 0) {
+      view.scrollTo(0, restoreScrollY);
+      restoreScrollY = 0;
+    }
+  }
+
+  private void render(WebView view) {
+    loadedCount = Math.min(loadedCount, versionHelper.getVersionCount());
+    String footer = (hasMore() ? getMoreLink() : "");
+    view.loadDataWithBaseURL(Constants.BASE_URL, versionHelper.getReleaseNotes(showRestore, loadedCount, footer), "text/html", "utf-8", null);
+  }
+
+  private static String getMoreLink() {
+    String text = TextUtils.htmlEncode(Strings.get(Strings.UPDATE_RELEASE_NOTES_MORE_ID));
+    return "<a href='" + MORE_URL + "' style='background: #c8c8c8; color: #000; display: block; margin: 40px 10px 0px 10px; padding: 10px; text-align: center; text-decoration: none;'>" + text + "</a>";
+  }
+
+  private boolean hasMore() {
+    return (loadedCount < versionHelper.getVersionCount());
+  }
+}
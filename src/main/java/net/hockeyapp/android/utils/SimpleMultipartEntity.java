@@ -1,10 +1,15 @@
 package net.hockeyapp.android.utils;
 
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.message.BasicHeader;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -14,6 +19,11 @@ import java.util.Random;
  * Please note that first all key value pairs have to be written and then at least one file part has to be added.
  * Otherwise the boundaries are not written correctly.
  *
+ * Files are not held in memory. Their content is copied from the file or
+ * content URI to the output stream when the entity is written, and the
+ * content length is computed from the part headers and the file sizes.
+ * The entity is repeatable as long as all parts can be opened again.
+ *
  * Based on:
  * http://derivedcode.wordpress.com/2014/11/04/android-uploading-files-to-server-over-http-using-multipart-entity/
  * 
@@ -50,18 +60,20 @@ public class SimpleMultipartEntity implements HttpEntity {
 
   private final static char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
 
+  private final static int BUFFER_SIZE = 8 * 1024;
+
   private boolean isSetLast;
 
   private boolean isSetFirst;
 
-  private ByteArrayOutputStream out;
+  private final List<Part> parts;
 
   private String boundary;
 
   public SimpleMultipartEntity() {
     this.isSetFirst = false;
     this.isSetLast  = false;
-    this.out = new ByteArrayOutputStream();
+    this.parts = new ArrayList<Part>();
 
     /** Create boundary String */
     final StringBuffer buffer = new StringBuffer();
@@ -79,7 +91,7 @@ public class SimpleMultipartEntity implements HttpEntity {
 
   public void writeFirstBoundaryIfNeeds() throws IOException {
     if (!isSetFirst) {
-      out.write(("--" + boundary + "\r\n").getBytes());
+      write("--" + boundary + "\r\n");
     }
     isSetFirst = true;
   }
@@ -88,56 +100,58 @@ public class SimpleMultipartEntity implements HttpEntity {
     if (isSetLast) {
       return;
     }
-    try {
-      out.write(("\r\n--" + boundary + "--\r\n").getBytes());
-
-    } catch (final IOException e) {
-      e.printStackTrace();
-    }
+    write("\r\n--" + boundary + "--\r\n");
     isSetLast = true;
   }
 
   public void addPart(final String key, final String value) throws IOException {
     writeFirstBoundaryIfNeeds();
 
-    out.write(("Content-Disposition: form-data; name=\"" + key + "\"\r\n").getBytes());
-    out.write("Content-Type: text/plain; charset=UTF-8\r\n".getBytes());
-    out.write("Content-Transfer-Encoding: 8bit\r\n\r\n".getBytes());
-    out.write(value.getBytes());
-    out.write(("\r\n--" + boundary + "\r\n").getBytes());
+    write("Content-Disposition: form-data; name=\"" + key + "\"\r\n");
+    write("Content-Type: text/plain; charset=UTF-8\r\n");
+    write("Content-Transfer-Encoding: 8bit\r\n\r\n");
+    write(value);
+    write("\r\n--" + boundary + "\r\n");
   }
 
   public void addPart(final String key, final File value, boolean lastFile) throws IOException {
-    addPart(key, value.getName(), new FileInputStream(value), lastFile);
+    addPart(key, value.getName(), new FilePart(value), "application/octet-stream", lastFile);
+  }
+
+  /**
+   * Adds a file part which is read from the given URI each time the entity
+   * is written.
+   *
+   * @param key name of the form field
+   * @param fileName file name sent to the server
+   * @param contentResolver resolver to open the URI
+   * @param uri URI of the file content
+   * @param lastFile true if no more files follow
+   * @throws IOException if the URI can't be opened
+   */
+  public void addPart(final String key, final String fileName, final ContentResolver contentResolver, final Uri uri, boolean lastFile) throws IOException {
+    addPart(key, fileName, new UriPart(contentResolver, uri), "application/octet-stream", lastFile);
   }
 
   public void addPart(final String key, final String fileName, final InputStream fin, boolean lastFile) throws IOException {
     addPart(key, fileName, fin, "application/octet-stream", lastFile);
   }
 
+  /**
+   * Adds a file part from a stream. The size of the stream is not known and
+   * it can't be read again, so its content is buffered. Use the variants
+   * with a file or an URI to stream the content instead.
+   */
   public void addPart(final String key, final String fileName, final InputStream fin, String type, boolean lastFile) throws IOException {
-    writeFirstBoundaryIfNeeds();
     try {
-      type = "Content-Type: " + type + "\r\n";
-      out.write(("Content-Disposition: form-data; name=\"" + key + "\"; filename=\"" + fileName + "\"\r\n").getBytes());
-      out.write(type.getBytes());
-      out.write("Content-Transfer-Encoding: binary\r\n\r\n".getBytes());
-
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
       final byte[] tmp = new byte[4096];
       int l = 0;
       while ((l = fin.read(tmp)) != -1) {
-        out.write(tmp, 0, l);
+        content.write(tmp, 0, l);
       }
-      out.flush();
 
-      if (lastFile) {
-        /** This is the last file: write last boundary. */
-        writeLastBoundaryIfNeeds();
-
-      } else {
-        /** Another file will follow: write normal boundary. */
-        out.write(("\r\n--" + boundary + "\r\n").getBytes());
-      }
+      addPart(key, fileName, new BytesPart(content.toByteArray()), type, lastFile);
 
     } finally {
       try {
@@ -148,10 +162,43 @@ public class SimpleMultipartEntity implements HttpEntity {
     }
   }
 
+  private void addPart(final String key, final String fileName, final Part content, String type, boolean lastFile) throws IOException {
+    writeFirstBoundaryIfNeeds();
+
+    type = "Content-Type: " + type + "\r\n";
+    write("Content-Disposition: form-data; name=\"" + key + "\"; filename=\"" + fileName + "\"\r\n");
+    write(type);
+    write("Content-Transfer-Encoding: binary\r\n\r\n");
+    parts.add(content);
+
+    if (lastFile) {
+      /** This is the last file: write last boundary. */
+      writeLastBoundaryIfNeeds();
+
+    } else {
+      /** Another file will follow: write normal boundary. */
+      write("\r\n--" + boundary + "\r\n");
+    }
+  }
+
+  private void write(String data) {
+    parts.add(new BytesPart(data.getBytes()));
+  }
+
   @Override
   public long getContentLength() {
     writeLastBoundaryIfNeeds();
-    return out.toByteArray().length;
+
+    long length = 0;
+    for (Part part : parts) {
+      long partLength = part.getLength();
+      if (partLength < 0) {
+        // Unknown size, the entity is sent chunked
+        return -1;
+      }
+      length += partLength;
+    }
+    return length;
   }
 
   @Override
@@ -166,7 +213,7 @@ public class SimpleMultipartEntity implements HttpEntity {
 
   @Override
   public boolean isRepeatable() {
-    return false;
+    return true;
   }
 
   @Override
@@ -176,7 +223,12 @@ public class SimpleMultipartEntity implements HttpEntity {
 
   @Override
   public void writeTo(final OutputStream outstream) throws IOException {
-    outstream.write(out.toByteArray());
+    writeLastBoundaryIfNeeds();
+
+    for (Part part : parts) {
+      part.writeTo(outstream);
+    }
+    outstream.flush();
   }
 
   @Override
@@ -193,6 +245,120 @@ public class SimpleMultipartEntity implements HttpEntity {
 
   @Override
   public InputStream getContent() throws IOException, UnsupportedOperationException {
+    // Only used for debugging, the request is sent with writeTo()
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
     return new ByteArrayInputStream(out.toByteArray());
   }
+
+  /**
+   * Content of the entity which can be written more than once.
+   */
+  private interface Part {
+    /**
+     * @return size in bytes or -1 if unknown
+     */
+    long getLength();
+
+    void writeTo(OutputStream outstream) throws IOException;
+  }
+
+  private static class BytesPart implements Part {
+    private final byte[] data;
+
+    public BytesPart(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public long getLength() {
+      return data.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+      outstream.write(data);
+    }
+  }
+
+  private static abstract class StreamPart implements Part {
+    protected abstract InputStream open() throws IOException;
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+      InputStream input = open();
+      if (input == null) {
+        throw new FileNotFoundException("Attachment can't be opened");
+      }
+
+      try {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+          outstream.write(buffer, 0, count);
+        }
+      }
+      finally {
+        input.close();
+      }
+    }
+  }
+
+  private static class FilePart extends StreamPart {
+    private final File file;
+
+    public FilePart(File file) throws FileNotFoundException {
+      if (!file.canRead()) {
+        throw new FileNotFoundException(file.getPath());
+      }
+      this.file = file;
+    }
+
+    @Override
+    public long getLength() {
+      return file.length();
+    }
+
+    @Override
+    protected InputStream open() throws IOException {
+      return new FileInputStream(file);
+    }
+  }
+
+  private static class UriPart extends StreamPart {
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final long length;
+
+    public UriPart(ContentResolver contentResolver, Uri uri) throws IOException {
+      this.contentResolver = contentResolver;
+      this.uri = uri;
+      this.length = querySize(contentResolver, uri);
+    }
+
+    @Override
+    public long getLength() {
+      return length;
+    }
+
+    @Override
+    protected InputStream open() throws IOException {
+      return contentResolver.openInputStream(uri);
+    }
+
+    private static long querySize(ContentResolver contentResolver, Uri uri) throws IOException {
+      AssetFileDescriptor descriptor = contentResolver.openAssetFileDescriptor(uri, "r");
+      if (descriptor == null) {
+        throw new FileNotFoundException(uri.toString());
+      }
+
+      try {
+        long size = descriptor.getLength();
+        return (size != AssetFileDescriptor.UNKNOWN_LENGTH ? size : -1);
+      }
+      finally {
+        descriptor.close();
+      }
+    }
+  }
 }
@@ -0,0 +1,414 @@
+package net.hockeyapp.android.utils;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import net.hockeyapp.android.Constants;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Cache for the thumbnails of feedback attachments. Decoded thumbnails are
+ * kept in memory, the least recently used are dropped when they use more
+ * than an eighth of the heap. Below that, the scaled thumbnails are stored
+ * as files, so the full-size image is only decoded once per size.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class ThumbnailCache {
+  /**
+   * Fraction of the maximum heap used for the memory cache.
+   */
+  private static final int MEMORY_FRACTION = 8;
+
+  /**
+   * Name of the folder for the thumbnail files in the storage dir.
+   */
+  private static final String FOLDER_NAME = "thumbnails";
+
+  /**
+   * Maximum total size of the thumbnail files.
+   */
+  private static final long MAX_DISK_SIZE = 10 * 1024 * 1024L;
+
+  private static final int JPEG_QUALITY = 90;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  /**
+   * Bitmap which was only used for decoding and can be decoded into again,
+   * one per thread.
+   */
+  private static final ThreadLocal<Bitmap> reusableBitmap = new ThreadLocal<Bitmap>();
+
+  /**
+   * Decoded thumbnail with the orientation of the image.
+   */
+  public static class Thumbnail {
+    private final Bitmap bitmap;
+    private final int orientation;
+
+    public Thumbnail(Bitmap bitmap, int orientation) {
+      this.bitmap = bitmap;
+      this.orientation = orientation;
+    }
+
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
+
+    /**
+     * @return ImageUtils.ORIENTATION_PORTRAIT or ImageUtils.ORIENTATION_LANDSCAPE
+     */
+    public int getOrientation() {
+      return orientation;
+    }
+
+    private int getByteCount() {
+      return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+  }
+
+  /**
+   * ThumbnailCacheHolder is loaded on the first execution of ThumbnailCache.getInstance()
+   * or the first access to ThumbnailCacheHolder.INSTANCE, not before.
+   */
+  private static class ThumbnailCacheHolder {
+    public static final ThumbnailCache INSTANCE = new ThumbnailCache();
+  }
+
+  public static ThumbnailCache getInstance() {
+    return ThumbnailCacheHolder.INSTANCE;
+  }
+
+  private final LinkedHashMap<String, Thumbnail> memoryCache;
+  private final long maxMemorySize;
+  private long memorySize;
+
+  /**
+   * Guards diskSize, so trimming the folder doesn't block the memory cache.
+   */
+  private final Object diskLock;
+  private long diskSize;
+
+  private ThumbnailCache() {
+    this.memoryCache = new LinkedHashMap<String, Thumbnail>(16, 0.75f, true);
+    this.maxMemorySize = Runtime.getRuntime().maxMemory() / MEMORY_FRACTION;
+    this.memorySize = 0;
+    this.diskLock = new Object();
+    this.diskSize = -1;
+  }
+
+  /**
+   * Returns the key of a thumbnail. The thumbnail fits into the portrait
+   * or landscape box, depending on the orientation of the image.
+   *
+   * @param cacheId cache id of the attachment
+   * @param widthPortrait maximum width of a portrait image
+   * @param heightPortrait maximum height of a portrait image
+   * @param widthLandscape maximum width of a landscape image
+   * @param heightLandscape maximum height of a landscape image
+   * @return the key
+   */
+  public static String getKey(String cacheId, int widthPortrait, int heightPortrait, int widthLandscape, int heightLandscape) {
+    return cacheId + "_" + widthPortrait + "x" + heightPortrait + "_" + widthLandscape + "x" + heightLandscape;
+  }
+
+  /**
+   * Returns the thumbnail if it is in memory. Doesn't access the disk, so
+   * it can be called from the UI thread.
+   *
+   * @param key key from {@link #getKey(String, int, int, int, int)}
+   * @return the thumbnail or null
+   */
+  public synchronized Thumbnail getFromMemory(String key) {
+    return memoryCache.get(key);
+  }
+
+  /**
+   * Returns the thumbnail from memory, from the disk or decodes it from the
+   * full-size image. Must be called from a background thread.
+   *
+   * @param image the full-size image
+   * @param key key from {@link #getKey(String, int, int, int, int)}
+   * @param widthPortrait maximum width of a portrait image
+   * @param heightPortrait maximum height of a portrait image
+   * @param widthLandscape maximum width of a landscape image
+   * @param heightLandscape maximum height of a landscape image
+   * @return the thumbnail or null if the image can't be decoded
+   * @throws IOException if the image can't be read
+   */
+  public Thumbnail load(File image, String key, int widthPortrait, int heightPortrait, int widthLandscape, int heightLandscape) throws IOException {
+    Thumbnail thumbnail = getFromMemory(key);
+    if (thumbnail != null) {
+      return thumbnail;
+    }
+
+    File thumbnailFile = getFile(key);
+    if ((thumbnailFile.exists()) && (thumbnailFile.lastModified() >= image.lastModified())) {
+      Bitmap bitmap = BitmapFactory.decodeFile(thumbnailFile.getPath());
+      if (bitmap != null) {
+        int orientation = (bitmap.getWidth() > bitmap.getHeight() ? ImageUtils.ORIENTATION_LANDSCAPE : ImageUtils.ORIENTATION_PORTRAIT);
+        thumbnail = new Thumbnail(bitmap, orientation);
+      }
+    }
+
+    if (thumbnail == null) {
+      int orientation = ImageUtils.determineOrientation(image);
+      int width  = (orientation == ImageUtils.ORIENTATION_LANDSCAPE ? widthLandscape : widthPortrait);
+      int height = (orientation == ImageUtils.ORIENTATION_LANDSCAPE ? heightLandscape : heightPortrait);
+
+      Bitmap bitmap = decodeScaled(image, width, height);
+      if (bitmap == null) {
+        return null;
+      }
+
+      thumbnail = new Thumbnail(bitmap, orientation);
+      save(thumbnailFile, bitmap);
+      trimDisk(thumbnailFile);
+    }
+
+    put(key, thumbnail);
+    return thumbnail;
+  }
+
+  private synchronized void put(String key, Thumbnail thumbnail) {
+    Thumbnail previous = memoryCache.put(key, thumbnail);
+    if (previous != null) {
+      memorySize -= previous.getByteCount();
+    }
+    memorySize += thumbnail.getByteCount();
+
+    // Evicted bitmaps may still be shown, so they are left to the garbage collector
+    Iterator<Map.Entry<String, Thumbnail>> iterator = memoryCache.entrySet().iterator();
+    while ((memorySize > maxMemorySize) && (iterator.hasNext())) {
+      Thumbnail eldest = iterator.next().getValue();
+      if (eldest == thumbnail) {
+        break;
+      }
+      memorySize -= eldest.getByteCount();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Deletes the oldest thumbnail files until their total size is below three
+   * quarters of MAX_DISK_SIZE. The folder is only listed when its size is
+   * not known yet or the budget was exceeded.
+   */
+  private void trimDisk(File savedFile) {
+    synchronized (diskLock) {
+      if (diskSize >= 0) {
+        diskSize += savedFile.length();
+        if (diskSize <= MAX_DISK_SIZE) {
+          return;
+        }
+      }
+
+      File[] files = savedFile.getParentFile().listFiles();
+      if (files == null) {
+        return;
+      }
+
+      Arrays.sort(files, new Comparator<File>() {
+        public int compare(File file1, File file2) {
+          long modified1 = file1.lastModified();
+          long modified2 = file2.lastModified();
+          return (modified1 > modified2 ? -1 : (modified1 < modified2 ? 1 : 0));
+        }
+      });
+
+      long size = 0;
+      for (File file : files) {
+        if (file.getName().endsWith(".tmp")) {
+          // Still being written by another thread
+          continue;
+        }
+
+        if (size + file.length() > MAX_DISK_SIZE * 3 / 4) {
+          file.delete();
+        }
+        else {
+          size += file.length();
+        }
+      }
+      diskSize = size;
+    }
+  }
+
+  /**
+   * Decodes the image with a power of two sample size and scales it to fit
+   * into the given box. The sampled bitmap is only used for scaling, so it
+   * is kept to decode the next image into it.
+   */
+  private static Bitmap decodeScaled(File image, int width, int height) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(image.getPath(), options);
+    if ((options.outWidth <= 0) || (options.outHeight <= 0)) {
+      return null;
+    }
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = ImageUtils.calculateInSampleSize(options, width, height);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      setReusableBitmap(options);
+    }
+
+    Bitmap sampled;
+    try {
+      sampled = BitmapFactory.decodeFile(image.getPath(), options);
+    }
+    catch (IllegalArgumentException e) {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+        throw e;
+      }
+
+      // The bitmap couldn't be reused
+      clearReusableBitmap(options);
+      sampled = BitmapFactory.decodeFile(image.getPath(), options);
+    }
+    if (sampled == null) {
+      return null;
+    }
+
+    float scale = Math.min(1.0f, Math.min((float)width / sampled.getWidth(), (float)height / sampled.getHeight()));
+    int scaledWidth = Math.max(1, Math.round(sampled.getWidth() * scale));
+    int scaledHeight = Math.max(1, Math.round(sampled.getHeight() * scale));
+
+    Bitmap scaled = Bitmap.createScaledBitmap(sampled, scaledWidth, scaledHeight, true);
+    if (scaled == sampled) {
+      // Used as thumbnail, so it can't be reused
+      scaled = sampled.copy(sampled.getConfig(), false);
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      keepForReuse(sampled);
+    }
+    else {
+      sampled.recycle();
+    }
+    return scaled;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void setReusableBitmap(BitmapFactory.Options options) {
+    options.inMutable = true;
+    Bitmap reusable = reusableBitmap.get();
+    if ((reusable == null) || (reusable.isRecycled())) {
+      return;
+    }
+
+    int sampleSize = options.inSampleSize;
+    int width = (options.outWidth + sampleSize - 1) / sampleSize;
+    int height = (options.outHeight + sampleSize - 1) / sampleSize;
+
+    // Before KitKat (API 19), only a bitmap of the same size can be reused
+    boolean reuse;
+    if (Build.VERSION.SDK_INT >= 19) {
+      reuse = (width * height * 4 <= reusable.getRowBytes() * reusable.getHeight());
+    }
+    else {
+      reuse = ((sampleSize == 1) && (reusable.getWidth() == width) && (reusable.getHeight() == height));
+    }
+
+    if (reuse) {
+      reusableBitmap.set(null);
+      options.inBitmap = reusable;
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void clearReusableBitmap(BitmapFactory.Options options) {
+    options.inBitmap = null;
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static void keepForReuse(Bitmap bitmap) {
+    if (!bitmap.isMutable()) {
+      bitmap.recycle();
+      return;
+    }
+
+    Bitmap previous = reusableBitmap.get();
+    if ((previous != null) && (previous != bitmap)) {
+      previous.recycle();
+    }
+    reusableBitmap.set(bitmap);
+  }
+
+  private static void save(File file, Bitmap bitmap) {
+    File folder = file.getParentFile();
+    if ((!folder.exists()) && (!folder.mkdirs())) {
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    OutputStream output = null;
+    try {
+      output = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+      Bitmap.CompressFormat format = (bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG);
+      boolean success = bitmap.compress(format, JPEG_QUALITY, output);
+      output.close();
+      output = null;
+
+      if ((!success) || (!tempFile.renameTo(file))) {
+        tempFile.delete();
+      }
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      tempFile.delete();
+    }
+    finally {
+      if (output != null) {
+        try {
+          output.close();
+        }
+        catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  private static File getFile(String key) {
+    return new File(new File(Constants.getHockeyAppStorageDir(), FOLDER_NAME), key);
+  }
+}
@@ -0,0 +1,184 @@
+package net.hockeyapp.android.utils;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to copy a network stream into a file. Uses a
+ * large buffer per thread and only reports progress when the percentage
+ * changed or when the report interval has passed.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class TransferUtils {
+  /**
+   * Size of the transfer buffer in bytes.
+   */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Minimum time between two progress reports if the percentage has not
+   * changed, e.g. when the content length is unknown.
+   */
+  public static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+  /**
+   * Value for remaining seconds if no estimate is available.
+   */
+  public static final int UNKNOWN = -1;
+
+  private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[BUFFER_SIZE];
+    }
+  };
+
+  /**
+   * Callback for throttled progress updates.
+   */
+  public interface TransferListener {
+    /**
+     * Called on the transferring thread.
+     *
+     * @param percent progress in percent or UNKNOWN if the length is unknown
+     * @param bytesPerSecond average speed since the transfer started
+     * @param remainingSeconds estimated time left or UNKNOWN
+     */
+    public void onProgress(int percent, long bytesPerSecond, int remainingSeconds);
+  }
+
+  /**
+   * Copies the given stream into the file and closes both.
+   *
+   * @param input stream to read from
+   * @param file destination file, will be overwritten
+   * @param expectedLength content length or a value <= 0 if unknown
+   * @param listener listener for progress updates, may be null
+   * @return number of bytes written
+   * @throws IOException if reading or writing fails
+   */
+  public static long copyToFile(InputStream input, File file, long expectedLength, TransferListener listener) throws IOException {
+    return copyToFile(input, file, expectedLength, listener, false);
+  }
+
+  /**
+   * Copies the given stream into the file and closes both. If sync is true,
+   * the file is synced to the disk before it is closed, e.g. for a file
+   * which is installed right afterwards.
+   *
+   * @param input stream to read from
+   * @param file destination file, will be overwritten
+   * @param expectedLength content length or a value <= 0 if unknown
+   * @param listener listener for progress updates, may be null
+   * @param sync true to sync the file to the disk
+   * @return number of bytes written
+   * @throws IOException if reading or writing fails
+   */
+  public static long copyToFile(InputStream input, File file, long expectedLength, TransferListener listener, boolean sync) throws IOException {
+    FileOutputStream output = null;
+    try {
+      output = new FileOutputStream(file);
+      long total = copy(input, output, expectedLength, listener);
+      if (sync) {
+        output.getFD().sync();
+      }
+      return total;
+    }
+    finally {
+      closeQuietly(input);
+      if (output != null) {
+        output.close();
+      }
+    }
+  }
+
+  /**
+   * Copies the given input stream into the file stream. Writes go directly
+   * to the file without additional buffering.
+   *
+   * @param input stream to read from
+   * @param output stream to write to
+   * @param expectedLength content length or a value <= 0 if unknown
+   * @param listener listener for progress updates, may be null
+   * @return number of bytes written
+   * @throws IOException if reading or writing fails
+   */
+  public static long copy(InputStream input, FileOutputStream output, long expectedLength, TransferListener listener) throws IOException {
+    byte[] buffer = buffers.get();
+
+    long startTime = SystemClock.elapsedRealtime();
+    long lastReportTime = startTime;
+    int lastPercent = UNKNOWN;
+    long total = 0;
+    int count;
+    while ((count = input.read(buffer)) != -1) {
+      output.write(buffer, 0, count);
+      total += count;
+
+      if (listener != null) {
+        long now = SystemClock.elapsedRealtime();
+        int percent = (expectedLength > 0 ? (int)Math.min(100, total * 100 / expectedLength) : UNKNOWN);
+        if ((percent != lastPercent) || (now - lastReportTime >= PROGRESS_INTERVAL_MILLIS)) {
+          report(listener, percent, total, expectedLength, now - startTime);
+          lastPercent = percent;
+          lastReportTime = now;
+        }
+      }
+    }
+
+    return total;
+  }
+
+  private static void report(TransferListener listener, int percent, long total, long expectedLength, long elapsedMillis) {
+    long bytesPerSecond = (elapsedMillis > 0 ? total * 1000 / elapsedMillis : 0);
+    int remainingSeconds = UNKNOWN;
+    if ((expectedLength > 0) && (bytesPerSecond > 0)) {
+      remainingSeconds = (int)(Math.max(0, expectedLength - total) / bytesPerSecond);
+    }
+    listener.onProgress(percent, bytesPerSecond, remainingSeconds);
+  }
+
+  private static void closeQuietly(InputStream input) {
+    if (input != null) {
+      try {
+        input.close();
+      }
+      catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+}
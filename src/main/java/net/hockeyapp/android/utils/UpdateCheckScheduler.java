@@ -0,0 +1,190 @@
+package net.hockeyapp.android.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Internal helper class to limit how often update checks in the background
+ * hit the network. After a check, the next check is due after the configured
+ * interval or the max-age sent by the server, whichever is longer, plus a
+ * random jitter. When a check becomes due, it is deferred by a random
+ * offset once, so devices which start the app at the same moment, e.g.
+ * fresh installs or at a shift change, don't hit the server together.
+ * Failed checks are retried after a growing delay. The times are
+ * persisted, so they survive restarts of the app.
+ *
+ * <h3>License</h3>
+ * 
+ * <pre>
+ * Copyright (c) 2011-2014 Bit Stadium GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ *
+ */
+public class UpdateCheckScheduler {
+  /**
+   * Default minimum interval between two update checks in the background.
+   */
+  public static final long DEFAULT_INTERVAL = 60 * 60 * 1000L;
+
+  /**
+   * Maximum jitter as fraction of the interval.
+   */
+  private static final double JITTER_FACTOR = 0.2;
+
+  /**
+   * Maximum random offset by which a due check is deferred.
+   */
+  private static final long DUE_SPREAD = 10 * 60 * 1000L;
+
+  /**
+   * Delay after the first failed check, doubled for each further failure
+   * up to the check interval.
+   */
+  private static final long RETRY_DELAY = 60 * 1000L;
+
+  private static final String PREFS_NAME = "net.hockeyapp.android.prefs_update_check";
+  private static final String KEY_LAST_CHECK = "lastCheck";
+  private static final String KEY_NEXT_CHECK = "nextCheck";
+  private static final String KEY_DEFERRED_UNTIL = "deferredUntil";
+  private static final String KEY_FAILURES = "failures";
+
+  private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age\\s*=\\s*\"?(\\d+)", Pattern.CASE_INSENSITIVE);
+
+  private static final Random random = new Random();
+
+  /**
+   * Returns true if the next update check may use the network.
+   *
+   * @param context the context to use
+   * @return true if the last check is older than its time to live
+   */
+  public static boolean isCheckDue(Context context) {
+    if (context == null) {
+      return true;
+    }
+
+    long now = System.currentTimeMillis();
+    SharedPreferences preferences = getPreferences(context);
+    long lastCheck = preferences.getLong(KEY_LAST_CHECK, 0);
+    long nextCheck = preferences.getLong(KEY_NEXT_CHECK, 0);
+
+    // Check at once if there was no check yet, nothing would retry a deferred
+    // first check before the next registration. Also check if the clock was
+    // set back.
+    if ((lastCheck == 0) || (now < lastCheck)) {
+      return true;
+    }
+    if (now < nextCheck) {
+      return false;
+    }
+
+    long deferredUntil = preferences.getLong(KEY_DEFERRED_UNTIL, 0);
+    if ((deferredUntil < nextCheck) || (deferredUntil == 0) || (deferredUntil > now + DUE_SPREAD)) {
+      // Due for the first time in this period, so pick the random offset
+      deferredUntil = now + (long)(random.nextDouble() * DUE_SPREAD);
+      PrefsUtil.applyChanges(preferences.edit().putLong(KEY_DEFERRED_UNTIL, deferredUntil));
+    }
+    return (now >= deferredUntil);
+  }
+
+  /**
+   * Saves the time of a successful check and schedules the next check.
+   *
+   * @param context the context to use
+   * @param interval minimum interval between two checks in milliseconds
+   * @param maxAge time to live sent by the server in milliseconds or -1
+   */
+  public static void checkFinished(Context context, long interval, long maxAge) {
+    if (context == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    long delay = Math.max(Math.max(interval, maxAge), 0);
+    long jitter = (long)(random.nextDouble() * delay * JITTER_FACTOR);
+
+    SharedPreferences.Editor editor = getPreferences(context).edit();
+    editor.putLong(KEY_LAST_CHECK, now);
+    editor.putLong(KEY_NEXT_CHECK, now + delay + jitter);
+    editor.putInt(KEY_FAILURES, 0);
+    PrefsUtil.applyChanges(editor);
+  }
+
+  /**
+   * Saves the time of a failed check, so the next check waits a delay
+   * which grows with each failure instead of trying again at once.
+   *
+   * @param context the context to use
+   * @param interval minimum interval between two checks in milliseconds
+   */
+  public static void checkFailed(Context context, long interval) {
+    if (context == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    SharedPreferences preferences = getPreferences(context);
+    int failures = preferences.getInt(KEY_FAILURES, 0);
+    long delay = Math.min(RETRY_DELAY << Math.min(failures, 16), Math.max(interval, RETRY_DELAY));
+    long jitter = (long)(random.nextDouble() * delay * JITTER_FACTOR);
+
+    SharedPreferences.Editor editor = preferences.edit();
+    editor.putLong(KEY_LAST_CHECK, now);
+    editor.putLong(KEY_NEXT_CHECK, now + delay + jitter);
+    editor.putInt(KEY_FAILURES, failures + 1);
+    PrefsUtil.applyChanges(editor);
+  }
+
+  /**
+   * Returns the max-age directive of a Cache-Control header.
+   *
+   * @param cacheControl value of the Cache-Control header, may be null
+   * @return max-age in milliseconds or -1 if not present
+   */
+  public static long parseMaxAge(String cacheControl) {
+    if (cacheControl == null) {
+      return -1;
+    }
+
+    Matcher matcher = MAX_AGE_PATTERN.matcher(cacheControl);
+    if (matcher.find()) {
+      try {
+        return Long.parseLong(matcher.group(1)) * 1000L;
+      }
+      catch (NumberFormatException e) {
+      }
+    }
+    return -1;
+  }
+
+  private static SharedPreferences getPreferences(Context context) {
+    return context.getSharedPreferences(PREFS_NAME, 0);
+  }
+}
@@ -2,11 +2,28 @@ package net.hockeyapp.android.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import net.hockeyapp.android.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * <h3>Description</h3>
  * 
- * Internal helper class to cache version data.
+ * Internal helper class to cache version data. The data is stored in
+ * its own file instead of the shared preferences, so it is only read
+ * when an update check needs it.
  * 
  * <h3>License</h3>
  * 
@@ -39,23 +56,330 @@ import android.content.SharedPreferences;
  **/
 public class VersionCache {
   private static String VERSION_INFO_KEY = "versionInfo";
+
+  /**
+   * Name of the cache file in the app's files dir.
+   */
+  private static final String FILE_NAME = "net.hockeyapp.android.versioninfo";
+
+  /**
+   * Name of the file with the complete feed in the app's files dir.
+   */
+  private static final String FEED_FILE_NAME = "net.hockeyapp.android.versionfeed";
+
+  /**
+   * First field of the header line, identifies the file format.
+   */
+  private static final String HEADER_MAGIC = "HockeyVersionCache";
+
+  private static final String EMPTY = "[]";
   
-  public static void setVersionInfo(Context context, String json) {
-    if (context != null) {
-      SharedPreferences preferences = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
-      SharedPreferences.Editor editor = preferences.edit();
-      editor.putString(VERSION_INFO_KEY, json);
-      PrefsUtil.applyChanges(editor);
+  /**
+   * Saves the version info to the cache file. The file starts with a header
+   * line with the fetch time and SDK version followed by the JSON.
+   *
+   * @param context the context to use
+   * @param json version info as JSON array
+   */
+  public static synchronized void setVersionInfo(Context context, String json) {
+    if (context == null) {
+      return;
+    }
+
+    File file = getFile(context, FILE_NAME);
+    if (file == null) {
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+      writer.write(createHeader(null));
+      writer.write(json);
+      writer.close();
+      writer = null;
+
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+      }
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    finally {
+      closeQuietly(writer);
     }
   }
   
-  public static String getVersionInfo(Context context) {
-    if (context != null) {
-      SharedPreferences preferences = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
-      return preferences.getString(VERSION_INFO_KEY, "[]");
+  /**
+   * Returns the cached version info. The cache file is only read when this
+   * method is called, an entry written by an other SDK version is ignored.
+   *
+   * @param context the context to use
+   * @return version info as JSON array, "[]" if nothing is cached
+   */
+  public static synchronized String getVersionInfo(Context context) {
+    if (context == null) {
+      return EMPTY;
+    }
+
+    File file = getFile(context, FILE_NAME);
+    if (file == null) {
+      return EMPTY;
+    }
+    if (!file.exists()) {
+      return migrateVersionInfo(context);
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      String[] header = readHeader(reader);
+      if (header == null) {
+        return EMPTY;
+      }
+
+      StringBuilder json = new StringBuilder();
+      char[] buffer = new char[4096];
+      int count;
+      while ((count = reader.read(buffer)) != -1) {
+        json.append(buffer, 0, count);
+      }
+      return json.toString();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      return EMPTY;
+    }
+    finally {
+      closeQuietly(reader);
+    }
+  }
+
+  /**
+   * Saves the complete version feed as sent by the server. The feed is only
+   * kept together with its ETag, so it can be evaluated again when the server
+   * answers a later request with 304 Not Modified. The input stream is read
+   * to the end and closed. The feed is read into a temporary file first, so
+   * the cache is only locked while the file is renamed.
+   *
+   * @param context the context to use
+   * @param input the feed as sent by the server
+   * @param eTag ETag of the response
+   * @throws IOException if the feed couldn't be read or saved
+   */
+  public static void setFeed(Context context, InputStream input, String eTag) throws IOException {
+    File file = ((context != null) && (eTag != null) ? getFile(context, FEED_FILE_NAME) : null);
+    if (file == null) {
+      input.close();
+      throw new IOException("Feed can't be saved");
+    }
+
+    File tempFile = null;
+    OutputStream output = null;
+    try {
+      tempFile = File.createTempFile(FEED_FILE_NAME, ".tmp", file.getParentFile());
+      output = new FileOutputStream(tempFile);
+      output.write(createHeader(eTag).getBytes("UTF-8"));
+
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        output.write(buffer, 0, count);
+      }
+      output.close();
+      output = null;
+
+      synchronized (VersionCache.class) {
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Feed can't be saved");
+        }
+      }
+    }
+    finally {
+      closeQuietly(output);
+      closeQuietly(input);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Opens the feed saved with {@link #setFeed}. The returned stream starts
+   * after the header line and has to be closed by the caller.
+   *
+   * @param context the context to use
+   * @return the feed or null if nothing is saved
+   */
+  public static synchronized InputStream openFeed(Context context) {
+    File file = (context != null ? getFile(context, FEED_FILE_NAME) : null);
+    if ((file == null) || (!file.exists())) {
+      return null;
+    }
+
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file));
+      if (readHeader(input) == null) {
+        return null;
+      }
+
+      InputStream feed = input;
+      input = null;
+      return feed;
+    }
+    catch (IOException e) {
+      return null;
+    }
+    finally {
+      closeQuietly(input);
+    }
+  }
+
+  /**
+   * Deletes the feed saved with {@link #setFeed}, e.g. if the server didn't
+   * send an ETag for the latest feed.
+   *
+   * @param context the context to use
+   */
+  public static synchronized void clearFeed(Context context) {
+    File file = (context != null ? getFile(context, FEED_FILE_NAME) : null);
+    if (file != null) {
+      file.delete();
     }
-    else {
-      return "[]";
+  }
+
+  /**
+   * Returns the ETag of the saved feed.
+   *
+   * @param context the context to use
+   * @return the ETag or null if no feed is saved
+   */
+  public static synchronized String getETag(Context context) {
+    String[] header = getHeader(context, FEED_FILE_NAME);
+    if ((header == null) || (header[3].length() == 0)) {
+      return null;
+    }
+    return header[3];
+  }
+
+  /**
+   * Returns the time when the cached version info was saved.
+   *
+   * @param context the context to use
+   * @return time in milliseconds or 0 if nothing is cached
+   */
+  public static synchronized long getFetchTime(Context context) {
+    String[] header = getHeader(context, FILE_NAME);
+    if (header == null) {
+      return 0;
+    }
+
+    try {
+      return Long.parseLong(header[2]);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static String[] getHeader(Context context, String name) {
+    if (context == null) {
+      return null;
+    }
+
+    File file = getFile(context, name);
+    if ((file == null) || (!file.exists())) {
+      return null;
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 256);
+      return readHeader(reader);
+    }
+    catch (IOException e) {
+      return null;
+    }
+    finally {
+      closeQuietly(reader);
+    }
+  }
+
+  /**
+   * Reads the header line and returns its four fields or null if the header
+   * is invalid or from an other SDK version.
+   */
+  private static String[] readHeader(BufferedReader reader) throws IOException {
+    return parseHeader(reader.readLine());
+  }
+
+  /**
+   * Reads the header line byte by byte, so the stream is positioned at the
+   * start of the content afterwards.
+   */
+  private static String[] readHeader(InputStream input) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    int b;
+    while ((b = input.read()) != '\n') {
+      if (b == -1) {
+        return null;
+      }
+      line.write(b);
+    }
+    return parseHeader(line.toString("UTF-8"));
+  }
+
+  private static String[] parseHeader(String line) {
+    if (line == null) {
+      return null;
+    }
+
+    String[] header = line.split("\t", 4);
+    if ((header.length != 4) || (!HEADER_MAGIC.equals(header[0])) || (!Constants.SDK_VERSION.equals(header[1]))) {
+      return null;
+    }
+    return header;
+  }
+
+  /**
+   * Moves version info cached in shared preferences by earlier SDK versions
+   * into the cache file, so it doesn't have to be loaded with the other
+   * preferences anymore.
+   */
+  private static String migrateVersionInfo(Context context) {
+    SharedPreferences preferences = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
+    String json = preferences.getString(VERSION_INFO_KEY, EMPTY);
+    setVersionInfo(context, json);
+
+    if (preferences.contains(VERSION_INFO_KEY)) {
+      SharedPreferences.Editor editor = preferences.edit();
+      editor.remove(VERSION_INFO_KEY);
+      PrefsUtil.applyChanges(editor);
+    }
+    return json;
+  }
+
+  private static String createHeader(String eTag) {
+    return HEADER_MAGIC + "\t" + Constants.SDK_VERSION + "\t" + System.currentTimeMillis() + "\t" + (eTag != null ? eTag : "") + "\n";
+  }
+
+  private static File getFile(Context context, String name) {
+    // The files dir can be null, see
+    // http://code.google.com/p/android/issues/detail?id=8886
+    File dir = context.getFilesDir();
+    return (dir != null ? new File(dir, name) : null);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException e) {
+      }
     }
   }
 }
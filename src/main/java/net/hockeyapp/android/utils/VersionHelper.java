@@ -4,19 +4,22 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Scanner;
+import java.util.List;
 
 import net.hockeyapp.android.UpdateInfoListener;
+import net.hockeyapp.android.objects.AppVersion;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 
 /**
  * <h3>Description</h3>
@@ -54,37 +57,48 @@ import android.content.pm.PackageManager;
  * @author Thomas Dohmke
  **/
 public class VersionHelper {
-  private ArrayList<JSONObject> sortedVersions;
-  private JSONObject newest;
-  private UpdateInfoListener listener;
+  private ArrayList<AppVersion> sortedVersions;
+  private AppVersion newest;
   private int currentVersionCode;
+  private int installedIndex;
+
+  /**
+   * Rendered HTML per version, filled lazily.
+   */
+  private String[] renderedVersions;
+  private boolean renderedWithRestore;
   
   public VersionHelper(Context context, String infoJSON, UpdateInfoListener listener) {
-    this.listener = listener;
-
-    loadVersions(context, infoJSON);
+    loadVersions(context, infoJSON, listener);
     sortVersions();
+    findInstalledVersion();
+
+    this.renderedVersions = new String[sortedVersions.size()];
   }
   
-  private void loadVersions(Context context, String infoJSON) {
-    this.newest = new JSONObject();
-    this.sortedVersions = new ArrayList<JSONObject>();
+  private void loadVersions(Context context, String infoJSON, UpdateInfoListener listener) {
+    this.newest = null;
+    this.sortedVersions = new ArrayList<AppVersion>();
     this.currentVersionCode = listener.getCurrentVersionCode();
 
     try {
-      JSONArray versions = new JSONArray(infoJSON);
+      List<AppVersion> versions = AppVersion.fromJSON(new JSONArray(infoJSON));
       
       int versionCode = listener.getCurrentVersionCode();
-      for (int index = 0; index < versions.length(); index++) {
-        JSONObject entry = versions.getJSONObject(index);
-        boolean largerVersionCode = (entry.getInt("version") > versionCode);
-        boolean newerApkFile = ((entry.getInt("version") == versionCode) && VersionHelper.isNewerThanLastUpdateTime(context, entry.getLong("timestamp")));
+      for (AppVersion version : versions) {
+        if ((version.getVersionCode() == versionCode) && (!version.hasTimestamp())) {
+          // The timestamp can't be compared, the remaining entries are skipped as before
+          break;
+        }
+
+        boolean largerVersionCode = (version.getVersionCode() > versionCode);
+        boolean newerApkFile = ((version.getVersionCode() == versionCode) && VersionHelper.isNewerThanLastUpdateTime(context, version.getTimestamp()));
 
         if (largerVersionCode || newerApkFile) {
-          newest = entry;
-          versionCode = entry.getInt("version");
+          newest = version;
+          versionCode = version.getVersionCode();
         }
-        sortedVersions.add(entry);
+        sortedVersions.add(version);
       }
     }
     catch (JSONException je) {
@@ -94,94 +108,143 @@ public class VersionHelper {
   }
 
   private void sortVersions() {
-    Collections.sort(sortedVersions, new Comparator<JSONObject>() {
-      public int compare(JSONObject object1, JSONObject object2) {
-        try {
-          if (object1.getInt("version") > object2.getInt("version")) {
-            return 0;
-          }
-        }
-        catch (JSONException je) {
-        }
-        catch (NullPointerException ne) {
-        }
+    Collections.sort(sortedVersions, AppVersion.NEWEST_FIRST);
+  }
+
+  /**
+   * Finds the first older entry with the installed version code, which is
+   * marked as installed in the release notes.
+   */
+  private void findInstalledVersion() {
+    installedIndex = -1;
 
-        return 0;
+    int newestCode = (newest != null ? newest.getVersionCode() : 0);
+    for (int index = 1; index < sortedVersions.size(); index++) {
+      int versionCode = sortedVersions.get(index).getVersionCode();
+      if ((versionCode != newestCode) && (versionCode == currentVersionCode)) {
+        installedIndex = index;
+        break;
       }
-    });
+    }
+  }
+
+  /**
+   * Returns the number of versions in the release notes.
+   *
+   * @return number of versions
+   */
+  public int getVersionCount() {
+    return sortedVersions.size();
+  }
+
+  /**
+   * Returns the newest version which is newer than the installed one.
+   *
+   * @return the newest version or null if there is none
+   */
+  public AppVersion getNewestVersion() {
+    return newest;
   }
 
   public String getVersionString() {
-    return failSafeGetStringFromJSON(newest, "shortversion", "") + " (" + failSafeGetStringFromJSON(newest, "version", "") + ")";
+    if (newest == null) {
+      return " ()";
+    }
+    return newest.getShortVersion() + " (" + newest.getVersionCode() + ")";
   }
   
   public String getFileDateString() {
-    long timestamp = failSafeGetLongFromJSON(newest, "timestamp", 0L);
+    long timestamp = (newest != null ? newest.getTimestamp() : 0L);
     Date date = new Date(timestamp * 1000L);
     SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
     return dateFormat.format(date);
   }
 
   public long getFileSizeBytes() {
-    boolean external = Boolean.valueOf(failSafeGetStringFromJSON(newest, "external", "false"));
-    long appSize = failSafeGetLongFromJSON(newest, "appsize", 0L);
+    if (newest == null) {
+      return 0L;
+    }
 
     // In case of external builds a size of 0 most likely means that the size could not be determined because the URL
     // is not accessible from the HockeyApp servers via the Internet. Return -1 in that case in order to try retrieving
     // the size at runtime from the HTTP header later.
-    return (external && appSize == 0L) ? -1L : appSize;
+    return (newest.isExternal() && newest.getAppSize() == 0L) ? -1L : newest.getAppSize();
   }
 
-  private static String failSafeGetStringFromJSON(JSONObject json, String name, String defaultValue) {
-    try {
-      return json.getString(name);
-    }
-    catch (JSONException e) {
-      return defaultValue;
-    }
-  }
-  
-  private static long failSafeGetLongFromJSON(JSONObject json, String name, long defaultValue) {
-    try {
-      return json.getLong(name);
-    }
-    catch (JSONException e) {
-      return defaultValue;
-    }
+  public String getReleaseNotes(boolean showRestore) {
+    return getReleaseNotes(showRestore, sortedVersions.size(), "");
   }
 
-  public String getReleaseNotes(boolean showRestore) {
+  /**
+   * Returns the release notes of the first versions as HTML document. The
+   * versions are wrapped in a container with the id "notes", so further
+   * versions can be appended later, see getReleaseNotes(int, int, boolean).
+   *
+   * @param showRestore true to show a restore button for older versions
+   * @param count number of versions to include
+   * @param footer HTML to append at the end of the body, e.g. a link
+   * @return HTML document with the release notes
+   */
+  public String getReleaseNotes(boolean showRestore, int count, String footer) {
     StringBuilder result = new StringBuilder();
     result.append("<html>");
     result.append("<body style='padding: 0px 0px 20px 0px'>");
-    
-    int count = 0;
-    for (JSONObject version : sortedVersions) {
-      if (count > 0) {
-        result.append(getSeparator());
-        if (showRestore) { 
-          result.append(getRestoreButton(count, version));
-        }
-      }
-      result.append(getVersionLine(count, version));
-      result.append(getVersionNotes(count, version));
-      count++;
-    }
-
+    result.append("<div id='notes'>");
+    result.append(getReleaseNotes(0, count, showRestore));
+    result.append("</div>");
+    result.append(footer);
     result.append("</body>");
     result.append("</html>");
 
     return result.toString();
   }
 
+  /**
+   * Returns the HTML of the versions from start (inclusive) to end
+   * (exclusive). The HTML of each version is only rendered once.
+   *
+   * @param start index of the first version
+   * @param end index after the last version, is capped at the number of versions
+   * @param showRestore true to show a restore button for older versions
+   * @return HTML of the versions
+   */
+  public String getReleaseNotes(int start, int end, boolean showRestore) {
+    if (showRestore != renderedWithRestore) {
+      renderedVersions = new String[sortedVersions.size()];
+      renderedWithRestore = showRestore;
+    }
+
+    StringBuilder result = new StringBuilder();
+    for (int index = Math.max(0, start); index < Math.min(end, sortedVersions.size()); index++) {
+      if (renderedVersions[index] == null) {
+        renderedVersions[index] = renderVersion(index, sortedVersions.get(index), showRestore);
+      }
+      result.append(renderedVersions[index]);
+    }
+    return result.toString();
+  }
+
+  private String renderVersion(int count, AppVersion version, boolean showRestore) {
+    StringBuilder result = new StringBuilder();
+    if (count > 0) {
+      result.append(getSeparator());
+      if (showRestore) { 
+        result.append(getRestoreButton(count, version));
+      }
+    }
+    result.append(getVersionLine(count, version));
+    result.append(getVersionNotes(count, version));
+    return result.toString();
+  }
+
   private Object getSeparator() {
     return "<hr style='border-top: 1px solid #c8c8c8; border-bottom: 0px; margin: 40px 10px 0px 10px;' />";
   }
 
-  private String getRestoreButton(int count, JSONObject version) {
+  private String getRestoreButton(int count, AppVersion version) {
     StringBuilder result = new StringBuilder();
 
-    String versionID = getVersionID(version);
+    String versionID = version.getId();
     if (versionID.length() > 0) {
       result.append("<a href='restore:" + versionID + "'  style='background: #c8c8c8; color: #000; display: block; float: right; padding: 7px; margin: 0px 10px 10px; text-decoration: none;'>Restore</a>");
     }
@@ -189,22 +252,11 @@ public class VersionHelper {
     return result.toString();
   }
 
-  private String getVersionID(JSONObject version) {
-    String versionID = "";
-    try { 
-      versionID = version.getString("id");
-    }
-    catch (JSONException e) {
-    }
-    return versionID;
-  }
-
-  private String getVersionLine(int count, JSONObject version) {
+  private String getVersionLine(int count, AppVersion version) {
     StringBuilder result = new StringBuilder();
 
-    int newestCode = getVersionCode(newest);
-    int versionCode = getVersionCode(version);
-    String versionName = getVersionName(version);
+    int versionCode = version.getVersionCode();
+    String versionName = version.getShortVersion();
     
     result.append("<div style='padding: 20px 10px 10px;'><strong>");
     if (count == 0) {
@@ -212,8 +264,7 @@ public class VersionHelper {
     }
     else {
       result.append("Version " + versionName + " (" + versionCode + "): ");
-      if ((versionCode != newestCode) && (versionCode == currentVersionCode)) {
-        currentVersionCode = -1;
+      if (count == installedIndex) {
         result.append("[INSTALLED]");
       }
     }
@@ -221,31 +272,11 @@ public class VersionHelper {
     
     return result.toString();
   }
-  
-  private int getVersionCode(JSONObject version) {
-    int versionCode = 0;
-    try { 
-      versionCode = version.getInt("version");
-    }
-    catch (JSONException e) {
-    }
-    return versionCode;
-  }
-  
-  private String getVersionName(JSONObject version) {
-    String versionName = "";
-    try { 
-      versionName = version.getString("shortversion");
-    }
-    catch (JSONException e) {
-    }
-    return versionName;
-  }
 
-  private String getVersionNotes(int count, JSONObject version) {
+  private String getVersionNotes(int count, AppVersion version) {
     StringBuilder result = new StringBuilder();
 
-    String notes = failSafeGetStringFromJSON(version, "notes", "");
+    String notes = version.getNotes();
     result.append("<div style='padding: 0px 10px;'>");
     if (notes.trim().length() == 0) {
       result.append("<em>No information.</em>");
@@ -261,7 +292,8 @@ public class VersionHelper {
   /**
    * Compare two versions strings with each other by splitting at the . 
    * and comparing the integer values. Additional string like "-update1"
-   * are ignored, i.e. "2.2" is considered equal to "2.2-update1". 
+   * are ignored, i.e. "2.2" is considered equal to "2.2-update1". Parts
+   * are parsed in place, so no objects are allocated.
    * 
    * @param left A version string, e.g. "2.1".
    * @param right A version string, e.g. "4.2.2".
@@ -275,47 +307,97 @@ public class VersionHelper {
       return 0;
     }
 
-    try {
-      // Strip out any "-update1" stuff, then build a scanner for the strings
-      Scanner leftScanner = new Scanner(left.replaceAll("\\-.*", ""));
-      Scanner rightScanner = new Scanner(right.replaceAll("\\-.*", ""));
-      leftScanner.useDelimiter("\\.");
-      rightScanner.useDelimiter("\\.");
-
-      // Compare the parts
-      while ((leftScanner.hasNextInt()) && (rightScanner.hasNextInt())) {
-        int leftValue = leftScanner.nextInt();
-        int rightValue = rightScanner.nextInt();
-        if (leftValue < rightValue) {
-          return -1;
-        } 
-        else if (leftValue > rightValue) {
+    // Ignore any "-update1" stuff
+    int leftEnd = getVersionEnd(left);
+    int rightEnd = getVersionEnd(right);
+
+    int leftStart = 0;
+    int rightStart = 0;
+    while (true) {
+      int leftStop = getPartEnd(left, leftStart, leftEnd);
+      int rightStop = getPartEnd(right, rightStart, rightEnd);
+      int leftValue = parsePart(left, leftStart, leftStop);
+      int rightValue = parsePart(right, rightStart, rightStop);
+
+      if ((leftValue < 0) || (rightValue < 0)) {
+        // Left side has more parts, so consider it bigger
+        if (leftValue >= 0) {
           return 1;
         }
+        // Right side has more parts, so consider it bigger
+        else if (rightValue >= 0) {
+          return -1;
+        }
+        // Ok, they are equal
+        else {
+          return 0;
+        }
       }
 
-      // Left side has more parts, so consider it bigger
-      if (leftScanner.hasNextInt()) {
-        return 1;
-      } 
-      // Right side has more parts, so consider it bigger
-      else if (rightScanner.hasNextInt()) {
+      // Compare the parts
+      if (leftValue < rightValue) {
         return -1;
-      } 
-      // Ok, they are equal
-      else {
-        return 0;
       }
+      else if (leftValue > rightValue) {
+        return 1;
+      }
+
+      leftStart = leftStop + 1;
+      rightStart = rightStop + 1;
     }
-    catch (Exception e) {
-      // If any exceptions happen, return zero
-      return 0;
+  }
+
+  private static int getVersionEnd(String version) {
+    int index = version.indexOf('-');
+    return (index < 0 ? version.length() : index);
+  }
+
+  private static int getPartEnd(String version, int start, int end) {
+    int index = start;
+    while ((index < end) && (version.charAt(index) != '.')) {
+      index++;
     }
+    return index;
   }
 
+  /**
+   * Returns the integer value of the given part or -1 if the part is
+   * empty, out of range, or not a number.
+   */
+  private static int parsePart(String version, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+
+    long value = 0;
+    for (int index = start; index < end; index++) {
+      char character = version.charAt(index);
+      if ((character < '0') || (character > '9')) {
+        return -1;
+      }
+
+      value = value * 10 + (character - '0');
+      if (value > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return (int)value;
+  }
+
+  /**
+   * Last modified timestamp of the installed APK file in seconds, -1 if
+   * not loaded yet.
+   */
+  private static volatile long lastUpdateTime = -1;
+
+  /**
+   * Resets the cached timestamp when the app's package is replaced.
+   */
+  private static BroadcastReceiver packageReplacedReceiver = null;
+
   /**
    * Returns true of the given timestamp is larger / newer than the last modified timestamp of
-   * the APK file of the app.
+   * the APK file of the app. The timestamp of the APK file is only looked up once per process.
    *
    * @param context the context to use
    * @param timestamp a Unix-style timestamp
@@ -327,15 +409,8 @@ public class VersionHelper {
     }
 
     try {
-      PackageManager pm = context.getPackageManager();
-      ApplicationInfo appInfo = pm.getApplicationInfo(context.getPackageName(), 0);
-      String appFile = appInfo.sourceDir;
-
-      // Get the last modified time stamp and adjust by half an hour
-      // to avoid issues with time deviations between client and server
-      long lastModified = new File(appFile).lastModified() / 1000 + 1800;
-
-      return timestamp > lastModified;
+      // Adjust by half an hour to avoid issues with time deviations between client and server
+      return timestamp > getLastUpdateTime(context) + 1800;
     }
     catch (PackageManager.NameNotFoundException e) {
       e.printStackTrace();
@@ -343,6 +418,56 @@ public class VersionHelper {
     }
   }
 
+  private static long getLastUpdateTime(Context context) throws PackageManager.NameNotFoundException {
+    long result = lastUpdateTime;
+    if (result < 0) {
+      synchronized (VersionHelper.class) {
+        result = lastUpdateTime;
+        if (result < 0) {
+          PackageManager pm = context.getPackageManager();
+          ApplicationInfo appInfo = pm.getApplicationInfo(context.getPackageName(), 0);
+          String appFile = appInfo.sourceDir;
+
+          result = new File(appFile).lastModified() / 1000;
+          lastUpdateTime = result;
+
+          registerPackageReplacedReceiver(context);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Registers a receiver which invalidates the cached timestamp. Usually
+   * the process is restarted after the package was replaced anyway.
+   */
+  private static void registerPackageReplacedReceiver(Context context) {
+    if (packageReplacedReceiver != null) {
+      return;
+    }
+
+    final String packageName = context.getPackageName();
+    packageReplacedReceiver = new BroadcastReceiver() {
+      @Override
+      public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if ((data != null) && (packageName.equals(data.getSchemeSpecificPart()))) {
+          lastUpdateTime = -1;
+        }
+      }
+    };
+
+    try {
+      IntentFilter filter = new IntentFilter(Intent.ACTION_PACKAGE_REPLACED);
+      filter.addDataScheme("package");
+      context.getApplicationContext().registerReceiver(packageReplacedReceiver, filter);
+    }
+    catch (Exception e) {
+      // Without the receiver, the timestamp is only reset by a restart of the process
+    }
+  }
+
   /**
    * Map internal Google version letter to a semantic version (currently L to 5.0).
    *
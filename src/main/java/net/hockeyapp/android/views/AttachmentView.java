@@ -4,6 +4,7 @@ import java.io.File;
 
 import net.hockeyapp.android.Constants;
 import net.hockeyapp.android.objects.FeedbackAttachment;
+import net.hockeyapp.android.tasks.AttachmentDownloader;
 import net.hockeyapp.android.utils.ImageUtils;
 import android.content.Context;
 import android.content.Intent;
@@ -68,11 +69,11 @@ public class AttachmentView extends FrameLayout {
 
   private final ViewGroup parent;
 
-  private final FeedbackAttachment attachment;
+  private FeedbackAttachment attachment;
 
-  private final Uri attachmentUri;
+  private Uri attachmentUri;
 
-  private final String filename;
+  private String filename;
 
   private ImageView imageView;
 
@@ -90,6 +91,9 @@ public class AttachmentView extends FrameLayout {
 
   private int orientation;
 
+  /** True while the thumbnail of a downloaded attachment is not set **/
+  private boolean loading;
+
   public AttachmentView(Context context, ViewGroup parent, Uri attachmentUri, boolean removable) {
     super(context);
 
@@ -126,14 +130,27 @@ public class AttachmentView extends FrameLayout {
 
     this.context = context;
     this.parent = parent;
-    this.attachment = attachment;
-    this.attachmentUri = Uri.fromFile(new File(Constants.getHockeyAppStorageDir(), attachment.getCacheId()));
-    this.filename = attachment.getFilename();
 
     calculateDimensions(30);
     initializeView(context, removable);
+    setAttachment(attachment);
+  }
+
+  /**
+   * Shows an other attachment in this view, so views of recycled messages
+   * can be reused. The view shows the loading placeholder until the new
+   * image is set. Only for views of downloaded attachments which are not
+   * removable.
+   *
+   * @param attachment the attachment to show
+   */
+  public void setAttachment(FeedbackAttachment attachment) {
+    this.attachment = attachment;
+    this.attachmentUri = Uri.fromFile(new File(Constants.getHockeyAppStorageDir(), attachment.getCacheId()));
+    this.filename = attachment.getFilename();
 
     orientation = ImageUtils.ORIENTATION_PORTRAIT;
+    loading = true;
     textView.setText("Loading...");
     configureViewForPlaceholder(false);
   }
@@ -162,9 +179,29 @@ public class AttachmentView extends FrameLayout {
     parent.removeView(this);
   }
 
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+
+    if ((attachment != null) && (loading)) {
+      // Load the thumbnails of visible attachments first
+      AttachmentDownloader.getInstance().download(attachment, this);
+    }
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    if (attachment != null) {
+      AttachmentDownloader.getInstance().cancel(this);
+    }
+
+    super.onDetachedFromWindow();
+  }
+
   public void setImage(Bitmap bitmap, int orientation) {
     this.textView.setText(filename);
     this.orientation = orientation;
+    this.loading = false;
 
     if (bitmap == null) {
       configureViewForPlaceholder(true);
@@ -175,6 +212,7 @@ public class AttachmentView extends FrameLayout {
   }
 
   public void signalImageLoadingError() {
+    loading = false;
     textView.setText("Error");
   }
 